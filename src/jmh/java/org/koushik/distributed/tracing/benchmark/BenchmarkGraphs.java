@@ -0,0 +1,65 @@
+package org.koushik.distributed.tracing.benchmark;
+
+import java.util.Random;
+
+/**
+ * Synthetic topologies for the benchmarks, written in the connection syntax the parsers read
+ * ({@code svc_0->svc_1:12, ...}) so parsing is benchmarked on the same input as the algorithms.
+ */
+public final class BenchmarkGraphs {
+
+    public enum Shape {
+        // sources and targets picked uniformly
+        RANDOM,
+        // targets picked by preferential attachment, a few services receive most of the calls
+        SCALE_FREE,
+        // a ring through all services plus short back jumps, so nearly every trace can loop
+        CYCLIC
+    }
+
+    private BenchmarkGraphs() {
+    }
+
+    // about four connections per service, latencies 1..100
+    public static int serviceCount(int edges) {
+        return Math.max(2, edges / 4);
+    }
+
+    public static String topology(Shape shape, int edges, long seed) {
+        Random random = new Random(seed);
+        int services = serviceCount(edges);
+        StringBuilder text = new StringBuilder(edges * 24);
+        // endpoints of the connections so far, sampling them prefers services with many connections
+        int[] endpoints = shape == Shape.SCALE_FREE ? new int[edges] : null;
+
+        for(int edge = 0; edge < edges; edge++) {
+            int source;
+            int target;
+            switch (shape) {
+                case RANDOM -> {
+                    source = random.nextInt(services);
+                    target = random.nextInt(services);
+                }
+                case SCALE_FREE -> {
+                    source = random.nextInt(services);
+                    target = edge == 0 || random.nextBoolean() ? random.nextInt(services) : endpoints[random.nextInt(edge)];
+                    endpoints[edge] = target;
+                }
+                default -> {
+                    if(edge < services) {
+                        source = edge;
+                        target = (edge + 1) % services;
+                    } else {
+                        source = random.nextInt(services);
+                        target = Math.floorMod(source - 1 - random.nextInt(8), services);
+                    }
+                }
+            }
+
+            if(edge > 0) text.append(", ");
+            text.append("svc_").append(source).append("->svc_").append(target)
+                    .append(':').append(1 + random.nextInt(100));
+        }
+        return text.toString();
+    }
+}
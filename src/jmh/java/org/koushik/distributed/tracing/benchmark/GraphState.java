@@ -0,0 +1,58 @@
+package org.koushik.distributed.tracing.benchmark;
+
+import org.koushik.distributed.tracing.model.AllConnections;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One synthetic topology per (shape, edges) parameter pair, built once per trial, together with
+ * the query inputs the benchmarks need.
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+    private static final int TRACE_HOPS = 5;
+
+    @Param({"RANDOM", "SCALE_FREE", "CYCLIC"})
+    public BenchmarkGraphs.Shape shape;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int edges;
+
+    public GraphService graphService;
+    public String topology;
+    public AllConnections connections;
+    public Graph graph;
+
+    public String source;
+    public String destination;
+    // a trace that exists in the graph, for the latency lookup
+    public String trace;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        graphService = new GraphService();
+        topology = BenchmarkGraphs.topology(shape, edges, 42);
+        connections = graphService.parseInputServiceConnectionDetails(topology);
+        graph = graphService.createServiceGraph(connections);
+
+        CompactGraph compact = graph.compact();
+        source = "svc_0";
+        destination = "svc_" + BenchmarkGraphs.serviceCount(edges) / 2;
+        if(compact.serviceId(destination) < 0) destination = source;
+
+        // follow the first connection of every service for a few hops
+        StringBuilder path = new StringBuilder(source);
+        int node = compact.serviceId(source);
+        for(int hop = 0; hop < TRACE_HOPS && node >= 0 && compact.offsets()[node] < compact.offsets()[node + 1]; hop++) {
+            node = compact.targets()[compact.offsets()[node]];
+            path.append('-').append(compact.services().nameOf(node));
+        }
+        trace = path.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package org.koushik.distributed.tracing.benchmark;
+
+import org.koushik.distributed.tracing.model.AllConnections;
+import org.koushik.distributed.tracing.model.Graph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// parsing a topology line and building the graph from it
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Benchmark
+    public AllConnections parseConnectionDetails(GraphState state) {
+        return state.graphService.parseInputServiceConnectionDetails(state.topology);
+    }
+
+    @Benchmark
+    public Graph createServiceGraph(GraphState state) {
+        return state.graphService.createServiceGraph(state.connections);
+    }
+
+    // single pass from text straight into the CSR form
+    @Benchmark
+    public Graph parseServiceGraph(GraphState state) {
+        return state.graphService.parseServiceGraph(state.topology);
+    }
+}
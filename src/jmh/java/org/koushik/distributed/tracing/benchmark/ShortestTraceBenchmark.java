@@ -0,0 +1,36 @@
+package org.koushik.distributed.tracing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Dijkstra based shortest traces and the plain latency lookup of a given trace
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortestTraceBenchmark {
+
+    @Benchmark
+    public int shortestTrace(GraphState state) {
+        return state.graphService.getShortestTraceByLatencyBetweenGivenNodes(state.graph, state.source, state.destination);
+    }
+
+    // source == destination searches for the shortest cycle
+    @Benchmark
+    public int shortestCycle(GraphState state) {
+        return state.graphService.getShortestTraceByLatencyBetweenGivenNodes(state.graph, state.source, state.source);
+    }
+
+    @Benchmark
+    public String traceLatency(GraphState state) {
+        return state.graphService.getTotalAverageLatencyOfGivenTraces(state.graph, state.trace);
+    }
+}
@@ -0,0 +1,48 @@
+package org.koushik.distributed.tracing.benchmark;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.service.TraceEnumerator;
+import org.koushik.distributed.tracing.service.TraceVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// the trace counting queries, with the bounds of the default questions
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceCountBenchmark {
+
+    @Benchmark
+    public long tracesWithMaxHops(GraphState state) {
+        return state.graphService.findNoOfTracesWithGivenMaxKHops(state.graph, state.source, state.source, 3);
+    }
+
+    @Benchmark
+    public long tracesWithExactHops(GraphState state) {
+        return state.graphService.findNoOfTracesEqualToGivenHops(state.graph, state.source, state.destination, 4);
+    }
+
+    // the same count by exhaustive enumeration on the common pool, for bounds the counters cannot express
+    @Benchmark
+    public long tracesWithExactHopsEnumerated(GraphState state) {
+        CompactGraph compact = state.graph.compact();
+        int destination = compact.serviceId(state.destination);
+        return TraceEnumerator.count(compact, compact.serviceId(state.source),
+                TraceVisitor.exactHops(compact, destination, 4), ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public long tracesWithinLatency(GraphState state) {
+        return state.graphService.getPossibleTracesLessThanGivenLatency(state.graph, state.source, state.source, 30);
+    }
+}
@@ -1,7 +1,30 @@
 package org.koushik.distributed.tracing;
 
+import org.koushik.distributed.tracing.helper.AppOptions;
 import org.koushik.distributed.tracing.helper.InputReader;
+import org.koushik.distributed.tracing.controller.QueryServer;
 import org.koushik.distributed.tracing.controller.UserInputController;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.TraceQuery;
+import org.koushik.distributed.tracing.service.GraphMetrics;
+import org.koushik.distributed.tracing.service.GraphRepository;
+import org.koushik.distributed.tracing.service.GraphSnapshot;
+import org.koushik.distributed.tracing.service.MappedTopologyReader;
+import org.koushik.distributed.tracing.service.QueryParser;
+import org.koushik.distributed.tracing.service.SpanIngestor;
+import org.koushik.distributed.tracing.service.TopologyGenerator;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -10,10 +33,96 @@ import org.koushik.distributed.tracing.controller.UserInputController;
  */
 public class App {
 
-    public static void main(String[] args) {
-        UserInputController inputService = new UserInputController(new InputReader(System.in, System.out));
-        String inputReceived = inputService.initApplication();
-        inputService.processInput(inputReceived);
+    public static void main(String[] args) throws IOException {
+        AppOptions options = AppOptions.parse(args);
+        if(GraphMetrics.ENABLED) GraphMetrics.registerMBean();
+        if(options.generateFile() != null) {
+            generate(options);
+            return;
+        }
+        if(options.snapshotFile() != null) {
+            saveSnapshot(options);
+            return;
+        }
+        if(options.isServer()) {
+            serve(options);
+            return;
+        }
+
+        InputReader reader = new InputReader(System.in, System.out);
+        List<TraceQuery> queries = options.queryFile() == null ? UserInputController.DEFAULT_QUERIES
+                : QueryParser.parseFile(options.queryFile());
+
+        // every line of the input file is an independent graph, so lines can be spread over a work-stealing pool
+        ExecutorService executor = options.isParallel() ? new ForkJoinPool(options.parallelism()) : null;
+        try {
+            UserInputController inputService = new UserInputController(reader, executor, options.parallelism(), queries);
+            if(options.spanSource() != null) {
+                try (Reader spans = openSpans(options.spanSource())) {
+                    inputService.processSpans(spans);
+                }
+            } else {
+                inputService.processInput(inputService.initApplication());
+            }
+        } finally {
+            if(executor != null) executor.shutdown();
+        }
+    }
+
+    // loads the topology once and answers queries over HTTP until the JVM is stopped
+    private static void serve(AppOptions options) throws IOException {
+        GraphRepository repository = new GraphRepository(loadTopology(options), options.landmarkCount());
+        InetAddress bindAddress = options.bindAddress() == null ? InetAddress.getLoopbackAddress()
+                : InetAddress.getByName(options.bindAddress());
+        QueryServer server = new QueryServer(repository, bindAddress, options.serverPort()).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+
+        GraphRepository.Version version = repository.current();
+        System.out.println("Serving " + version.graph().compact().nodeCount() + " services on "
+                + bindAddress.getHostAddress() + " port " + server.port());
+    }
+
+    private static void saveSnapshot(AppOptions options) throws IOException {
+        CompactGraph graph = loadTopology(options).compact();
+        GraphSnapshot.write(graph, options.snapshotFile());
+        System.out.println("Saved " + graph.nodeCount() + " services and " + graph.edgeCount()
+                + " connections to " + options.snapshotFile());
     }
 
+    private static void generate(AppOptions options) throws IOException {
+        TopologyGenerator.Settings settings = TopologyGenerator.Settings.parse(options.generatorSettings());
+        long connections = new TopologyGenerator(settings).writeTo(options.generateFile());
+        System.out.println("Generated " + settings.services() + " services and " + connections
+                + " connections to " + options.generateFile());
+    }
+
+    private static Graph loadTopology(AppOptions options) throws IOException {
+        if(options.spanSource() != null) {
+            SpanIngestor ingestor = new SpanIngestor().start();
+            try (ingestor; Reader spans = openSpans(options.spanSource())) {
+                ingestor.ingest(spans);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the spans", e);
+            }
+            return ingestor.snapshot();
+        }
+
+        if(options.topologyFile() != null && GraphSnapshot.isSnapshot(options.topologyFile())) {
+            return new Graph(GraphSnapshot.read(options.topologyFile()));
+        }
+        if(options.topologyFile() != null) {
+            // memory mapped and parsed straight from its bytes, a generated topology line may be several GB long
+            Graph graph = new MappedTopologyReader(options.topologyFile()).readFirstGraph();
+            if(graph != null) return graph;
+        }
+
+        // nothing to start with, a topology can still be uploaded with PUT /topology
+        return new Graph(List.of());
+    }
+
+    private static Reader openSpans(String spanSource) throws IOException {
+        return spanSource.equals(AppOptions.STDIN) ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Path.of(spanSource), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,286 @@
+package org.koushik.distributed.tracing.controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.TraceQuery;
+import org.koushik.distributed.tracing.service.GraphMetrics;
+import org.koushik.distributed.tracing.service.GraphRepository;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.QueryParser;
+import org.koushik.distributed.tracing.service.QueryPlanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP server answering trace queries against a topology loaded once, built on the JDK's
+ * {@code com.sun.net.httpserver}. All answers are JSON, except for the plain text metrics dump:
+ * <pre>
+ * GET  /latency?trace=A-B-C                                  {"version":1,"answer":9}
+ * GET  /percentiles?trace=A-B-C                              {"version":1,"answer":"p50=9 p99=9"}
+ * GET  /traces/max-hops?source=C&amp;destination=C&amp;hops=3
+ * GET  /traces/exact-hops?source=A&amp;destination=C&amp;hops=4
+ * GET  /traces/within-latency?source=C&amp;destination=C&amp;limit=30
+ * GET  /shortest?source=A&amp;destination=C
+ * GET  /traces/k-shortest?source=A&amp;destination=C&amp;k=3       {"version":1,"answer":"A-B-C:9, A-D-C:13, ..."}
+ * POST /batch        body: queries in the query file format  {"version":1,"answers":[9,5,...]}
+ * GET  /topology                                             {"version":1,"services":5,"connections":9}
+ * PUT  /topology     body: one connection line, e.g. AB5, BC4
+ * GET  /metrics                                              {@link GraphMetrics#dump()}
+ * </pre>
+ * Queries read the current {@link GraphRepository} version without locks, a topology upload
+ * publishes a new version. There is no authentication, anyone reaching the server can replace the
+ * topology, so it listens on the loopback address unless given another one. Responses have a fixed length so HTTP/1.1 connections are kept alive.
+ * <p>
+ * Requests run on one virtual thread each when the JVM has them (Java 21+), found by reflection
+ * so the code still builds for Java 17; otherwise on a fixed pool of platform threads.
+ */
+public class QueryServer implements AutoCloseable {
+    private static final int MAX_BODY_BYTES = 16 << 20;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    private final GraphRepository repository;
+    private final GraphService graphService = new GraphService();
+    private final QueryPlanner queryPlanner = new QueryPlanner(graphService);
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public QueryServer(GraphRepository repository, int port) throws IOException {
+        this(repository, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public QueryServer(GraphRepository repository, InetAddress bindAddress, int port) throws IOException {
+        this.repository = repository;
+        this.executor = requestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        this.server.setExecutor(executor);
+
+        server.createContext("/latency", get(params -> new TraceQuery.TraceLatency(required(params, "trace"))));
+        server.createContext("/percentiles", get(params -> new TraceQuery.TracePercentiles(required(params, "trace"))));
+        server.createContext("/traces/max-hops", get(params -> new TraceQuery.MaxHops(
+                required(params, "source"), required(params, "destination"), number(params, "hops"))));
+        server.createContext("/traces/exact-hops", get(params -> new TraceQuery.ExactHops(
+                required(params, "source"), required(params, "destination"), number(params, "hops"))));
+        server.createContext("/traces/within-latency", get(params -> new TraceQuery.WithinLatency(
+                required(params, "source"), required(params, "destination"), number(params, "limit"))));
+        server.createContext("/shortest", get(params -> new TraceQuery.ShortestTrace(
+                required(params, "source"), required(params, "destination"))));
+        server.createContext("/traces/k-shortest", get(params -> new TraceQuery.ShortestTraces(
+                required(params, "source"), required(params, "destination"), number(params, "k"))));
+        server.createContext("/batch", this::handleBatch);
+        server.createContext("/topology", this::handleTopology);
+        server.createContext("/metrics", exchange -> {
+            if(exchange.getRequestMethod().equals("GET")) respond(exchange, 200, TEXT, GraphMetrics.dump());
+            else respond(exchange, 405, JSON, errorJson("Method not allowed, use GET"));
+        });
+        // answered here rather than by the built-in handler, which closes the connection after its 404
+        server.createContext("/", exchange -> respond(exchange, 404, JSON, errorJson("Not found")));
+    }
+
+    public QueryServer start() {
+        server.start();
+        return this;
+    }
+
+    // the bound port, useful when the server was created for port 0
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public InetAddress bindAddress() {
+        return server.getAddress().getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface QueryMapping {
+        TraceQuery toQuery(Map<String, String> params);
+    }
+
+    private HttpHandler get(QueryMapping mapping) {
+        return exchange -> handle(exchange, "GET", () -> {
+            GraphRepository.Version version = repository.current();
+            TraceQuery query = mapping.toQuery(queryParams(exchange));
+            String answer = queryPlanner.execute(version.graph(), List.of(query)).get(0);
+            return "{\"version\":" + version.number() + ",\"answer\":" + jsonAnswer(answer) + "}";
+        });
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        handle(exchange, "POST", () -> {
+            List<TraceQuery> queries = QueryParser.parse(readBody(exchange).lines().toList());
+            // the whole batch is answered on one version, even when the topology changes meanwhile
+            GraphRepository.Version version = repository.current();
+            List<String> answers = queryPlanner.execute(version.graph(), queries);
+
+            StringBuilder json = new StringBuilder("{\"version\":").append(version.number()).append(",\"answers\":[");
+            for(int i = 0; i < answers.size(); i++) {
+                if(i > 0) json.append(',');
+                json.append(jsonAnswer(answers.get(i)));
+            }
+            return json.append("]}").toString();
+        });
+    }
+
+    private void handleTopology(HttpExchange exchange) throws IOException {
+        if(exchange.getRequestMethod().equals("PUT")) {
+            handle(exchange, "PUT", () -> {
+                Graph graph = graphService.parseServiceGraph(readBody(exchange).trim());
+                return topologyJson(repository.publish(graph));
+            });
+        } else {
+            handle(exchange, "GET", () -> topologyJson(repository.current()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Response {
+        String json() throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Response response) throws IOException {
+        int status;
+        String json;
+        try {
+            if(!exchange.getRequestMethod().equals(method)) {
+                status = 405;
+                json = errorJson("Method not allowed, use " + method);
+            } else if(!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                status = 404;
+                json = errorJson("Not found");
+            } else {
+                json = response.json();
+                status = 200;
+            }
+        } catch (IllegalArgumentException ex) {
+            // also covers InvalidConnectionException for a bad topology line
+            status = 400;
+            json = errorJson(ex.getMessage());
+        } catch (RuntimeException ex) {
+            status = 500;
+            json = errorJson(ex.toString());
+        }
+        respond(exchange, status, JSON, json);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        // the request body has to be drained for the connection to be reused
+        try (InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if(body.length > MAX_BODY_BYTES) throw new IllegalArgumentException("Request body too large");
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null) return params;
+
+        for(String param: query.split("&")) {
+            int eq = param.indexOf('=');
+            if(eq <= 0) continue;
+            params.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if(value == null || value.isBlank()) throw new IllegalArgumentException("Missing parameter '" + name + "'");
+        return value;
+    }
+
+    private static int number(Map<String, String> params, String name) {
+        String value = required(params, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Parameter '" + name + "' is not a number: " + value);
+        }
+    }
+
+    private static String topologyJson(GraphRepository.Version version) {
+        return "{\"version\":" + version.number()
+                + ",\"services\":" + version.graph().compact().nodeCount()
+                + ",\"connections\":" + version.graph().compact().edgeCount() + "}";
+    }
+
+    // numeric answers stay numbers, everything else ("NO SUCH TRACE", percentiles) becomes a string
+    private static String jsonAnswer(String answer) {
+        try {
+            Long.parseLong(answer);
+            return answer;
+        } catch (NumberFormatException ex) {
+            return jsonString(answer);
+        }
+    }
+
+    private static String errorJson(String message) {
+        return "{\"error\":" + jsonString(message == null ? "" : message) + "}";
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if(c < 0x20) json.append(String.format("\\u%04x", (int) c));
+                    else json.append(c);
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            // no virtual threads before Java 21, handlers only block on socket I/O so a small pool suffices
+            return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+}
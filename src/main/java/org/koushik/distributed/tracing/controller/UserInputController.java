@@ -3,19 +3,73 @@ package org.koushik.distributed.tracing.controller;
 import org.koushik.distributed.tracing.helper.HelperUtil;
 import org.koushik.distributed.tracing.helper.InputReader;
 import org.koushik.distributed.tracing.helper.UserMessageEnum;
-import org.koushik.distributed.tracing.model.AllConnections;
 import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.TraceQuery;
 import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.GraphSnapshot;
+import org.koushik.distributed.tracing.service.MappedTopologyReader;
+import org.koushik.distributed.tracing.service.QueryPlanner;
+import org.koushik.distributed.tracing.service.SpanIngestor;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class UserInputController {
+    // questions asked for every graph when no query file is given
+    public static final List<TraceQuery> DEFAULT_QUERIES = List.of(
+            // 1. The average latency of the trace A-B-C.
+            new TraceQuery.TraceLatency("A-B-C"),
+            // 2. The average latency of the trace A-D.
+            new TraceQuery.TraceLatency("A-D"),
+            // 3. The average latency of the trace A-D-C.
+            new TraceQuery.TraceLatency("A-D-C"),
+            // 4. The average latency of the trace A-E-B-C-D.
+            new TraceQuery.TraceLatency("A-E-B-C-D"),
+            // 5. The average latency of the trace A-E-D.
+            new TraceQuery.TraceLatency("A-E-D"),
+            // 6. The number of traces originating in service C and ending in service C with a maximum of
+            //    3 hops.
+            new TraceQuery.MaxHops("C", "C", 3),
+            // 7. The number of traces originating in A and ending in C with exactly 4 hops.
+            new TraceQuery.ExactHops("A", "C", 4),
+            // 8. The length of the shortest trace (in terms of latency) between A and C.
+            new TraceQuery.ShortestTrace("A", "C"),
+            // 9. The length of the shortest trace (in terms of latency) between B and B.
+            new TraceQuery.ShortestTrace("B", "B"),
+            // 10. The number of different traces from C to C with an average latency of less than 30.
+            new TraceQuery.WithinLatency("C", "C", 30));
+
+    // max. lines being processed ahead of the output, per thread of the executor
+    private static final int LINES_IN_FLIGHT_PER_THREAD = 4;
+
     private final InputReader reader;
+    // executor for processing lines in parallel, null for processing them one after another
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final List<TraceQuery> queries;
 
     public UserInputController(InputReader reader) {
+        this(reader, null, 1, DEFAULT_QUERIES);
+    }
+
+    public UserInputController(InputReader reader, ExecutorService executor) {
+        this(reader, executor, executor instanceof ForkJoinPool pool ? pool.getParallelism()
+                : Runtime.getRuntime().availableProcessors(), DEFAULT_QUERIES);
+    }
+
+    public UserInputController(InputReader reader, ExecutorService executor, int parallelism, List<TraceQuery> queries) {
         this.reader = reader;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.queries = List.copyOf(queries);
     }
 
     public String initApplication() {
@@ -26,7 +80,7 @@ public class UserInputController {
     public void processInput(String userInput) {
         // validate 1. input file path
         // 2. if the file exist or not
-        // 3. if the file is .txt file or not
+        // 3. if the file is .txt file (or a .dtg graph snapshot) or not
         userInput = reader.validateInput(userInput);
 
         switch (userInput.trim()) {
@@ -50,83 +104,85 @@ public class UserInputController {
         }
     }
 
+    // builds the graph from a stream of spans, then reports every connection and answers the queries on it
+    public void processSpans(Reader spans) {
+        SpanIngestor ingestor = new SpanIngestor().start();
+        try (ingestor) {
+            ingestor.ingest(spans);
+        } catch (IOException e) {
+            throw new RuntimeException("Exception while try to reading the spans. Exception is - " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the spans", e);
+        }
+
+        reader.writeMessage(String.format("spans=%d calls=%d evicted=%d dropped=%d rejected=%d",
+                ingestor.spans(), ingestor.calls(), ingestor.evictedSpans(), ingestor.droppedChildren(),
+                ingestor.rejectedLines()));
+        ingestor.describeConnections().forEach(reader::writeMessage);
+        executeGraphQueries(new GraphService(), ingestor.snapshot()).forEach(reader::writeMessage);
+    }
+
     public boolean validateInputFilePath(String filePath) {
         return HelperUtil.isValidPath(filePath);
     }
 
     private void readFileAndExecuteGraphService(String filePath) {
-        try(BufferedReader buffReader = new BufferedReader(new FileReader(filePath))) {
-            String line = buffReader.readLine();
-            GraphService graphService = new GraphService();
-
-            while (line != null) {
-                AllConnections connections = graphService.parseInputServiceConnectionDetails(line);
-                Graph graph = graphService.createServiceGraph(connections);
-
-                // 1. The average latency of the trace A-B-C.
-                String input = "A-B-C";
-                String calculatedAvgLatency = graphService.getTotalAverageLatencyOfGivenTraces(graph, input);
-                reader.writeMessage(calculatedAvgLatency);
-
-                // 2. The average latency of the trace A-D.
-                input = "A-D";
-                calculatedAvgLatency = graphService.getTotalAverageLatencyOfGivenTraces(graph, input);
-                reader.writeMessage(calculatedAvgLatency);
-
-                // 3. The average latency of the trace A-D-C.
-                input = "A-D-C";
-                calculatedAvgLatency = graphService.getTotalAverageLatencyOfGivenTraces(graph, input);
-                reader.writeMessage(calculatedAvgLatency);
-
-                // 4. The average latency of the trace A-E-B-C-D.
-                input = "A-E-B-C-D";
-                calculatedAvgLatency = graphService.getTotalAverageLatencyOfGivenTraces(graph, input);
-                reader.writeMessage(calculatedAvgLatency);
-
-                // 5. The average latency of the trace A-E-D.
-                input = "A-E-D";
-                calculatedAvgLatency = graphService.getTotalAverageLatencyOfGivenTraces(graph, input);
-                reader.writeMessage(calculatedAvgLatency);
-
-                // 6. The number of traces originating in service C and ending in service C with a maximum of
-                //    3 hops.
-                String source = "C";
-                String destination = "C";
-                int noOfHops = 3;
-                int noOfTraces = graphService.findNoOfTracesWithGivenMaxKHops(graph, source, destination, noOfHops);
-                reader.writeMessage(String.valueOf(noOfTraces));
-
-                // 7. The number of traces originating in A and ending in C with exactly 4 hops.
-                source = "A";
-                destination = "C";
-                noOfHops = 4;
-                noOfTraces = graphService.findNoOfTracesEqualToGivenHops(graph, source, destination, noOfHops);
-                reader.writeMessage(String.valueOf(noOfTraces));
-
-                // 8. The length of the shortest trace (in terms of latency) between A and C.
-                source = "A";
-                destination = "C";
-                int shortestTrace = graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, source, destination);
-                reader.writeMessage(String.valueOf(shortestTrace));
-
-                // 9. The length of the shortest trace (in terms of latency) between B and B.
-                source = "B";
-                destination = "B";
-                shortestTrace = graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, source, destination);
-                reader.writeMessage(String.valueOf(shortestTrace));
-
-                // 10. The number of different traces from C to C with an average latency of less than 30.
-                source = "C";
-                destination = "C";
-                int latencyLimit = 30;
-                int noOfPossibleTraces = graphService.getPossibleTracesLessThanGivenLatency(graph, source, destination, latencyLimit);
-                reader.writeMessage(String.valueOf(noOfPossibleTraces));
-
-                // read next line and execute
-                line = buffReader.readLine();
+        GraphService graphService = new GraphService();
+        MappedTopologyReader topologyReader = new MappedTopologyReader(Path.of(filePath));
+
+        try {
+            if(GraphSnapshot.isSnapshot(Path.of(filePath))) {
+                // a binary snapshot holds exactly one graph, ready to query without parsing
+                executeGraphQueries(graphService, new Graph(GraphSnapshot.read(Path.of(filePath))))
+                        .forEach(reader::writeMessage);
+            } else if(executor == null) {
+                // the file is memory mapped and parsed straight from its bytes, one graph per line
+                topologyReader.read((lineNumber, graph) ->
+                        executeGraphQueries(graphService, graph).forEach(reader::writeMessage));
+            } else {
+                readFileAndExecuteGraphServiceInParallel(graphService, topologyReader);
             }
         } catch (IOException e) {
             throw new RuntimeException("Exception while try to reading the file from given file path. Exception is - " + e.getMessage());
         }
     }
+
+    private void readFileAndExecuteGraphServiceInParallel(GraphService graphService,
+                                                          MappedTopologyReader topologyReader) throws IOException {
+        // lines are parsed and queried on the executor while the answers are written in input order,
+        // the number of lines ahead of the output is bounded so memory does not grow with the file
+        int maxLinesInFlight = Math.max(1, parallelism * LINES_IN_FLIGHT_PER_THREAD);
+        Deque<Future<List<String>>> linesInFlight = new ArrayDeque<>();
+
+        topologyReader.readLines((lineNumber, line) -> {
+            linesInFlight.add(executor.submit(() ->
+                    executeGraphQueries(graphService, MappedTopologyReader.parseLine(lineNumber, line))));
+
+            while(linesInFlight.size() >= maxLinesInFlight) {
+                writeAnswers(linesInFlight.poll());
+            }
+        });
+
+        while(!linesInFlight.isEmpty()) {
+            writeAnswers(linesInFlight.poll());
+        }
+    }
+
+    private void writeAnswers(Future<List<String>> answers) {
+        try {
+            answers.get().forEach(reader::writeMessage);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the graph queries", e);
+        } catch (ExecutionException e) {
+            // rethrow parse errors etc. as they would be thrown when processing sequentially
+            if(e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private List<String> executeGraphQueries(GraphService graphService, Graph graph) {
+        return new QueryPlanner(graphService).execute(graph, queries);
+    }
 }
@@ -0,0 +1,117 @@
+package org.koushik.distributed.tracing.helper;
+
+import java.nio.file.Path;
+
+/**
+ * Command line options of the application.
+ * <ul>
+ *     <li>{@code --parallel[=N]} - process the lines of the input file on N threads
+ *     (all available cores when N is omitted)</li>
+ *     <li>{@code --queries=FILE} - answer the queries of the given query file for every graph
+ *     instead of the default questions</li>
+ *     <li>{@code --spans=FILE|-} - build the graph from a span file (or stdin for '-') instead of
+ *     asking for an input file</li>
+ *     <li>{@code --server=PORT} - serve queries over HTTP instead of answering them once</li>
+ *     <li>{@code --bind=ADDRESS} - the address the server listens on, the loopback address when
+ *     omitted; the server has no authentication, so only bind it to addresses trusted clients use</li>
+ *     <li>{@code --landmarks=N} - index N landmarks for every topology version the server
+ *     publishes, which guides its shortest trace searches</li>
+ *     <li>{@code --topology=FILE} - the topology served, the first graph line of the file or a
+ *     binary graph snapshot</li>
+ *     <li>{@code --save-snapshot=FILE} - write the topology given by {@code --topology} or
+ *     {@code --spans} to a binary graph snapshot and exit</li>
+ *     <li>{@code --generate=FILE} - write a synthetic topology (a binary graph snapshot for a .dtg
+ *     file, a topology line otherwise) and exit</li>
+ *     <li>{@code --generator=SETTINGS} - settings of the synthetic topology, e.g.
+ *     {@code services=100000,fan-out=2.5,cycles=0.2,seed=7}</li>
+ * </ul>
+ */
+public record AppOptions(int parallelism, Path queryFile, String spanSource, int serverPort, String bindAddress,
+                         int landmarkCount, Path topologyFile, Path snapshotFile, Path generateFile,
+                         String generatorSettings) {
+    public static final String STDIN = "-";
+    public static final int NO_SERVER = -1;
+
+    private static final String PARALLEL_OPTION = "--parallel";
+    private static final String QUERIES_OPTION = "--queries=";
+    private static final String SPANS_OPTION = "--spans=";
+    private static final String SERVER_OPTION = "--server=";
+    private static final String BIND_OPTION = "--bind=";
+    private static final String LANDMARKS_OPTION = "--landmarks=";
+    private static final String TOPOLOGY_OPTION = "--topology=";
+    private static final String SAVE_SNAPSHOT_OPTION = "--save-snapshot=";
+    private static final String GENERATE_OPTION = "--generate=";
+    private static final String GENERATOR_OPTION = "--generator=";
+
+    public static AppOptions parse(String[] args) {
+        int parallelism = 1;
+        Path queryFile = null;
+        String spanSource = null;
+        int serverPort = NO_SERVER;
+        String bindAddress = null;
+        int landmarkCount = 0;
+        Path topologyFile = null;
+        Path snapshotFile = null;
+        Path generateFile = null;
+        String generatorSettings = null;
+
+        for(String arg: args) {
+            if(arg.equals(PARALLEL_OPTION)) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            } else if(arg.startsWith(PARALLEL_OPTION + "=")) {
+                parallelism = parsePositive(arg, arg.substring(PARALLEL_OPTION.length() + 1));
+            } else if(arg.startsWith(QUERIES_OPTION)) {
+                queryFile = Path.of(arg.substring(QUERIES_OPTION.length()));
+            } else if(arg.startsWith(SPANS_OPTION) && arg.length() > SPANS_OPTION.length()) {
+                spanSource = arg.substring(SPANS_OPTION.length());
+            } else if(arg.startsWith(SERVER_OPTION)) {
+                serverPort = parsePort(arg, arg.substring(SERVER_OPTION.length()));
+            } else if(arg.startsWith(BIND_OPTION) && arg.length() > BIND_OPTION.length()) {
+                bindAddress = arg.substring(BIND_OPTION.length());
+            } else if(arg.startsWith(LANDMARKS_OPTION)) {
+                landmarkCount = parsePositive(arg, arg.substring(LANDMARKS_OPTION.length()));
+            } else if(arg.startsWith(TOPOLOGY_OPTION)) {
+                topologyFile = Path.of(arg.substring(TOPOLOGY_OPTION.length()));
+            } else if(arg.startsWith(SAVE_SNAPSHOT_OPTION)) {
+                snapshotFile = Path.of(arg.substring(SAVE_SNAPSHOT_OPTION.length()));
+            } else if(arg.startsWith(GENERATE_OPTION)) {
+                generateFile = Path.of(arg.substring(GENERATE_OPTION.length()));
+            } else if(arg.startsWith(GENERATOR_OPTION)) {
+                generatorSettings = arg.substring(GENERATOR_OPTION.length());
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        return new AppOptions(parallelism, queryFile, spanSource, serverPort, bindAddress, landmarkCount, topologyFile,
+                snapshotFile, generateFile, generatorSettings);
+    }
+
+    public boolean isParallel() {
+        return parallelism > 1;
+    }
+
+    public boolean isServer() {
+        return serverPort != NO_SERVER;
+    }
+
+    private static int parsePort(String arg, String value) {
+        try {
+            int port = Integer.parseInt(value);
+            if(port >= 0 && port <= 0xFFFF) return port;
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid value in option: " + arg);
+    }
+
+    private static int parsePositive(String arg, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if(parsed > 0) return parsed;
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid value in option: " + arg);
+    }
+}
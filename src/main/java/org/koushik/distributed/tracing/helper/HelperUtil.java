@@ -5,6 +5,8 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 
 public class HelperUtil {
+    // extension of binary graph snapshots, accepted next to .txt topology files
+    public static final String SNAPSHOT_FILE_EXTENSION = ".dtg";
 
     public static boolean isValidPath(String path) {
         try {
@@ -14,11 +16,15 @@ public class HelperUtil {
 
             if(!file.exists() ||
                     !file.isFile() ||
-                        !file.getAbsolutePath().endsWith(".txt")) return false;
+                        !(file.getAbsolutePath().endsWith(".txt") || isSnapshotPath(path))) return false;
 
         } catch (InvalidPathException | NullPointerException ex) {
             return false;
         }
         return true;
     }
+
+    public static boolean isSnapshotPath(String path) {
+        return path != null && path.endsWith(SNAPSHOT_FILE_EXTENSION);
+    }
 }
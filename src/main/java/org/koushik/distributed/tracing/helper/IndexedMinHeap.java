@@ -0,0 +1,131 @@
+package org.koushik.distributed.tracing.helper;
+
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min heap of int ids (0..capacity-1) keyed by int priorities, with decrease-key.
+ * <p>
+ * All state lives in primitive arrays sized once for the id range, so pushes, decrease-keys and
+ * polls never allocate. A 4-ary layout halves the tree depth of a binary heap and keeps the
+ * children of a slot in one cache line.
+ */
+public final class IndexedMinHeap {
+    private static final int ARITY = 4;
+    private static final int ABSENT = -1;
+
+    private int[] heap = new int[0];
+    private int[] keys = new int[0];
+    // id -> slot in the heap, ABSENT when the id is not queued
+    private int[] slots = new int[0];
+    private int size;
+
+    public void ensureCapacity(int capacity) {
+        if(capacity <= slots.length) return;
+
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        int oldCapacity = slots.length;
+        slots = Arrays.copyOf(slots, capacity);
+        Arrays.fill(slots, oldCapacity, capacity, ABSENT);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return slots[id] != ABSENT;
+    }
+
+    public int minKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Queues the id, or lowers its key when it is already queued with a larger one.
+     * Returns false when the id was queued with a key not larger than the given one.
+     */
+    public boolean offer(int id, int key) {
+        int slot = slots[id];
+        if(slot == ABSENT) {
+            keys[id] = key;
+            slot = size++;
+            heap[slot] = id;
+            slots[id] = slot;
+        } else if(key < keys[id]) {
+            keys[id] = key;
+        } else {
+            return false;
+        }
+        siftUp(slot);
+        return true;
+    }
+
+    // removes and returns the id with the smallest key
+    public int poll() {
+        int min = heap[0];
+        slots[min] = ABSENT;
+
+        int last = heap[--size];
+        if(size > 0) {
+            heap[0] = last;
+            slots[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    // empties the heap in O(size), the capacity is kept
+    public void clear() {
+        for(int i = 0; i < size; i++) slots[heap[i]] = ABSENT;
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int id = heap[slot];
+        int key = keys[id];
+        while(slot > 0) {
+            int parentSlot = (slot - 1) / ARITY;
+            int parent = heap[parentSlot];
+            if(keys[parent] <= key) break;
+
+            heap[slot] = parent;
+            slots[parent] = slot;
+            slot = parentSlot;
+        }
+        heap[slot] = id;
+        slots[id] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int id = heap[slot];
+        int key = keys[id];
+        while(true) {
+            int firstChild = slot * ARITY + 1;
+            if(firstChild >= size) break;
+
+            int minChildSlot = firstChild;
+            int minChildKey = keys[heap[firstChild]];
+            int lastChild = Math.min(firstChild + ARITY, size);
+            for(int child = firstChild + 1; child < lastChild; child++) {
+                int childKey = keys[heap[child]];
+                if(childKey < minChildKey) {
+                    minChildKey = childKey;
+                    minChildSlot = child;
+                }
+            }
+            if(key <= minChildKey) break;
+
+            int minChild = heap[minChildSlot];
+            heap[slot] = minChild;
+            slots[minChild] = slot;
+            slot = minChildSlot;
+        }
+        heap[slot] = id;
+        slots[id] = slot;
+    }
+}
@@ -3,5 +3,21 @@ package org.koushik.distributed.tracing.model;
 import java.util.List;
 import java.util.Set;
 
-public record AllConnections(Set<String> services, List<ConnectionDetails> allConnections) {
+public record AllConnections(Set<String> services, List<ConnectionDetails> allConnections, ServiceDictionary dictionary) {
+
+    public AllConnections(Set<String> services, List<ConnectionDetails> allConnections) {
+        this(services, allConnections, dictionaryOf(services, allConnections));
+    }
+
+    private static ServiceDictionary dictionaryOf(Set<String> services, List<ConnectionDetails> allConnections) {
+        ServiceDictionary dictionary = new ServiceDictionary();
+        for(ConnectionDetails connection: allConnections) {
+            dictionary.intern(connection.getSourceService());
+            dictionary.intern(connection.getDestService());
+        }
+        for(String service: services) {
+            dictionary.intern(service);
+        }
+        return dictionary;
+    }
 }
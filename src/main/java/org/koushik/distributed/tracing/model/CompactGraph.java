@@ -0,0 +1,263 @@
+package org.koushik.distributed.tracing.model;
+
+import java.util.Arrays;
+
+/**
+ * Frozen, int-indexed CSR (compressed sparse row) form of the service graph.
+ * <p>
+ * Out-edges of service {@code u} are stored in {@code targets[offsets[u] .. offsets[u + 1])} with
+ * the matching latencies at the same positions, sorted by target id. The arrays are exposed
+ * directly for the traversal code in the service layer and must be treated as read-only.
+ */
+public final class CompactGraph {
+    private final ServiceDictionary services;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] latencies;
+    private final int minLatency;
+    private final int maxLatency;
+
+    // optional all-pairs shortest latencies, built on demand for this snapshot
+    private volatile ShortestLatencyIndex shortestLatencyIndex;
+    // optional landmark distances guiding point-to-point shortest trace searches
+    private volatile LandmarkIndex landmarkIndex;
+    // the graph with every connection reversed, built on first use
+    private volatile CompactGraph reverse;
+
+    private CompactGraph(ServiceDictionary services, int[] offsets, int[] targets, int[] latencies) {
+        this.services = services;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.latencies = latencies;
+
+        int min = Integer.MAX_VALUE, max = 0;
+        for(int latency: latencies) {
+            min = Math.min(min, latency);
+            max = Math.max(max, latency);
+        }
+        this.minLatency = latencies.length == 0 ? 0 : min;
+        this.maxLatency = max;
+    }
+
+    public static CompactGraph from(AllConnections connections) {
+        ServiceDictionary services = connections.dictionary();
+        Builder builder = new Builder(services);
+
+        for(ConnectionDetails connection: connections.allConnections()) {
+            builder.addEdge(services.intern(connection.getSourceService()),
+                    services.intern(connection.getDestService()),
+                    connection.getLatency());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Graph over ready-made CSR arrays, e.g. loaded from a snapshot file. The arrays are taken as
+     * they are after checking that they form a valid CSR graph over the dictionary's services with
+     * latencies that are not negative.
+     */
+    public static CompactGraph of(ServiceDictionary services, int[] offsets, int[] targets, int[] latencies) {
+        int nodeCount = offsets.length - 1;
+        if(nodeCount != services.size() || offsets[0] != 0 || offsets[nodeCount] != targets.length
+                || targets.length != latencies.length)
+            throw new IllegalArgumentException("CSR arrays do not match " + services.size() + " services");
+
+        for(int node = 0; node < nodeCount; node++) {
+            if(offsets[node + 1] < offsets[node]) throw new IllegalArgumentException("Offsets must not decrease");
+
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                if(targets[edge] < 0 || targets[edge] >= nodeCount)
+                    throw new IllegalArgumentException("Unknown target service id " + targets[edge]);
+                if(edge > offsets[node] && targets[edge] <= targets[edge - 1])
+                    throw new IllegalArgumentException("Targets must be sorted and unique per service");
+                if(latencies[edge] < 0) throw new IllegalArgumentException("Negative latency " + latencies[edge]);
+            }
+        }
+        return new CompactGraph(services, offsets, targets, latencies);
+    }
+
+    // same connections under another dictionary with the same ids, the read-only arrays are shared
+    public CompactGraph withServices(ServiceDictionary services) {
+        CompactGraph copy = new CompactGraph(services, offsets, targets, latencies);
+        copy.shortestLatencyIndex = shortestLatencyIndex;
+        copy.landmarkIndex = landmarkIndex;
+        return copy;
+    }
+
+    public ServiceDictionary services() {
+        return services;
+    }
+
+    // returns -1 for a service that is not part of this snapshot
+    public int serviceId(String service) {
+        int id = services.idOf(service);
+        return id < nodeCount() ? id : -1;
+    }
+
+    public int nodeCount() {
+        return offsets.length - 1;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public int[] offsets() {
+        return offsets;
+    }
+
+    public int[] targets() {
+        return targets;
+    }
+
+    public int[] latencies() {
+        return latencies;
+    }
+
+    // smallest connection latency, 0 for a graph without connections
+    public int minLatency() {
+        return minLatency;
+    }
+
+    public int maxLatency() {
+        return maxLatency;
+    }
+
+    public ShortestLatencyIndex shortestLatencyIndex() {
+        return shortestLatencyIndex;
+    }
+
+    public void attachShortestLatencyIndex(ShortestLatencyIndex index) {
+        if(index != null && index.nodeCount() != nodeCount())
+            throw new IllegalArgumentException("Index does not belong to this graph");
+        this.shortestLatencyIndex = index;
+    }
+
+    public LandmarkIndex landmarkIndex() {
+        return landmarkIndex;
+    }
+
+    public void attachLandmarkIndex(LandmarkIndex index) {
+        if(index != null && index.nodeCount() != nodeCount())
+            throw new IllegalArgumentException("Index does not belong to this graph");
+        this.landmarkIndex = index;
+    }
+
+    /**
+     * The same services with every connection reversed, so {@code targets} of a row are the
+     * services calling it. Built once in O(services + connections) and cached; racing threads may
+     * both build it, which is harmless.
+     */
+    public CompactGraph reverse() {
+        CompactGraph reversed = reverse;
+        if(reversed != null) return reversed;
+
+        int nodeCount = nodeCount();
+        int[] reverseOffsets = new int[nodeCount + 1];
+        for(int target: targets) reverseOffsets[target + 1]++;
+        for(int node = 0; node < nodeCount; node++) reverseOffsets[node + 1] += reverseOffsets[node];
+
+        // sources are visited in id order, so every reversed row comes out sorted
+        int[] reverseTargets = new int[targets.length];
+        int[] reverseLatencies = new int[targets.length];
+        int[] cursor = Arrays.copyOf(reverseOffsets, nodeCount);
+        for(int node = 0; node < nodeCount; node++) {
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int slot = cursor[targets[edge]]++;
+                reverseTargets[slot] = node;
+                reverseLatencies[slot] = latencies[edge];
+            }
+        }
+
+        reversed = new CompactGraph(services, reverseOffsets, reverseTargets, reverseLatencies);
+        reversed.reverse = this;
+        reverse = reversed;
+        return reversed;
+    }
+
+    // returns -1 for a non-existing connection, same as Graph.getLatency
+    public int latency(int sourceId, int destId) {
+        if(sourceId < 0 || sourceId >= nodeCount()) return -1;
+
+        int edgeIdx = Arrays.binarySearch(targets, offsets[sourceId], offsets[sourceId + 1], destId);
+        return edgeIdx < 0 ? -1 : latencies[edgeIdx];
+    }
+
+    /**
+     * Collects edges by service id and freezes them into a {@link CompactGraph}. When the same
+     * connection is added more than once the last latency wins, as with {@code Map.put}.
+     */
+    public static final class Builder {
+        private final ServiceDictionary services;
+        private int[] sources = new int[16];
+        private int[] dests = new int[16];
+        private int[] weights = new int[16];
+        private int size;
+
+        public Builder(ServiceDictionary services) {
+            this.services = services;
+        }
+
+        public Builder addEdge(int sourceId, int destId, int latency) {
+            if(size == sources.length) {
+                int newLength = size << 1;
+                sources = Arrays.copyOf(sources, newLength);
+                dests = Arrays.copyOf(dests, newLength);
+                weights = Arrays.copyOf(weights, newLength);
+            }
+            sources[size] = sourceId;
+            dests[size] = destId;
+            weights[size] = latency;
+            size++;
+            return this;
+        }
+
+        public int edgeCount() {
+            return size;
+        }
+
+        public CompactGraph build() {
+            int nodeCount = services.size();
+            int[] offsets = new int[nodeCount + 1];
+
+            // counting sort of the edges by source id
+            for(int i = 0; i < size; i++) offsets[sources[i] + 1]++;
+            for(int node = 0; node < nodeCount; node++) offsets[node + 1] += offsets[node];
+
+            // (target << 32 | insertion sequence) keys so a row sort orders by target
+            // and keeps duplicates in insertion order
+            long[] rowKeys = new long[size];
+            int[] cursor = Arrays.copyOf(offsets, nodeCount);
+            for(int i = 0; i < size; i++) {
+                rowKeys[cursor[sources[i]]++] = ((long) dests[i] << 32) | i;
+            }
+
+            int[] targets = new int[size];
+            int[] latencies = new int[size];
+            int[] compactOffsets = new int[nodeCount + 1];
+            int edgeCount = 0;
+
+            for(int node = 0; node < nodeCount; node++) {
+                int from = offsets[node], to = offsets[node + 1];
+                Arrays.sort(rowKeys, from, to);
+
+                for(int k = from; k < to; k++) {
+                    int target = (int) (rowKeys[k] >>> 32);
+                    // a later duplicate of the same connection overrides the earlier one
+                    if(k + 1 < to && (int) (rowKeys[k + 1] >>> 32) == target) continue;
+
+                    targets[edgeCount] = target;
+                    latencies[edgeCount] = weights[(int) rowKeys[k]];
+                    edgeCount++;
+                }
+                compactOffsets[node + 1] = edgeCount;
+            }
+
+            return new CompactGraph(services,
+                    compactOffsets,
+                    edgeCount == size ? targets : Arrays.copyOf(targets, edgeCount),
+                    edgeCount == size ? latencies : Arrays.copyOf(latencies, edgeCount));
+        }
+    }
+}
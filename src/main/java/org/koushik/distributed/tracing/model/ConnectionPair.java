@@ -1,4 +0,0 @@
-package org.koushik.distributed.tracing.model;
-
-public record ConnectionPair(String serviceNode, Integer latency) {
-}
@@ -1,25 +1,125 @@
 package org.koushik.distributed.tracing.model;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Service graph as built by the parsers. A graph is mutable until it is {@link #freeze() frozen};
+ * a frozen graph is an immutable version that any number of threads can query without locks,
+ * its mutators throw {@link UnsupportedOperationException}.
+ */
 public class Graph {
-    Map<String, Map<String, Integer>> adjacencyList;
+    // volatile so a frozen graph can materialize it lazily while other threads read
+    volatile Map<String, Map<String, Integer>> adjacencyList;
+
+    // service name -> dense id mapping shared with the parser, so ids are assigned only once
+    private final ServiceDictionary services;
+
+    // frozen CSR form used by the graph algorithms, rebuilt lazily after any change
+    private volatile CompactGraph compactGraph;
+
+    // optional latency distribution per connection, next to the single latency the algorithms use
+    private final Map<String, Map<String, LatencySketch>> latencySketches;
+
+    private final boolean frozen;
 
     public Graph(List<String> nodes) {
+        this(nodes, new ServiceDictionary());
+    }
+
+    public Graph(List<String> nodes, ServiceDictionary services) {
         this.adjacencyList = new HashMap<>();
+        this.services = services;
+        this.latencySketches = new HashMap<>();
+        this.frozen = false;
 
         for(String node: nodes) {
             this.adjacencyList.putIfAbsent(node, new HashMap<>());
+            this.services.intern(node);
+        }
+    }
+
+    // graph built straight from its CSR form, the adjacency map is only materialized when asked for
+    public Graph(CompactGraph compactGraph) {
+        this(compactGraph, new HashMap<>(), false);
+    }
+
+    private Graph(CompactGraph compactGraph, Map<String, Map<String, LatencySketch>> latencySketches, boolean frozen) {
+        this.services = compactGraph.services();
+        this.compactGraph = compactGraph;
+        this.latencySketches = latencySketches;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Immutable version of the current state. It gets its own copy of the service dictionary and
+     * of the latency sketches, so this graph can go on changing while the version is read.
+     */
+    public Graph freeze() {
+        if(frozen) return this;
+
+        Map<String, Map<String, LatencySketch>> sketches = new HashMap<>();
+        latencySketches.forEach((sourceNode, destSketches) -> {
+            Map<String, LatencySketch> copies = new HashMap<>();
+            destSketches.forEach((destNode, sketch) -> copies.put(destNode, sketch.copy()));
+            sketches.put(sourceNode, Collections.unmodifiableMap(copies));
+        });
+
+        CompactGraph compact = compact();
+        return new Graph(compact.withServices(services.copy()), Collections.unmodifiableMap(sketches), true);
+    }
+
+    // mutable copy of a version, the starting point of the next one
+    public Graph mutableCopy() {
+        Map<String, Map<String, Integer>> adjacency = getAdjacencyList();
+        Graph copy = new Graph(List.copyOf(adjacency.keySet()));
+        adjacency.forEach((sourceNode, destNodes) -> destNodes.forEach((destNode, latency) -> {
+            copy.addAdjacentVertex(sourceNode, destNode, latency);
+            LatencySketch sketch = getLatencySketch(sourceNode, destNode);
+            if(sketch != null) copy.setLatencySketch(sourceNode, destNode, sketch.copy());
+        }));
+        return copy;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    // adds a service without connections, e.g. one first seen while the graph is being built from spans
+    public void addVertex(String node) {
+        checkMutable();
+        if(getAdjacencyList().putIfAbsent(node, new HashMap<>()) == null) {
+            this.services.intern(node);
+            this.compactGraph = null;
         }
     }
 
     public void addAdjacentVertex(String sourceNode, String destNode, Integer weight) {
-        this.adjacencyList.get(sourceNode).put(destNode, weight);
+        checkMutable();
+        getAdjacencyList().get(sourceNode).put(destNode, weight);
+        this.compactGraph = null;
+    }
+
+    public void setLatencySketch(String sourceNode, String destNode, LatencySketch sketch) {
+        checkMutable();
+        latencySketches.computeIfAbsent(sourceNode, node -> new HashMap<>()).put(destNode, sketch);
+    }
+
+    // latency distribution of the connection, null when only its single latency is known
+    public LatencySketch getLatencySketch(String sourceNode, String destNode) {
+        Map<String, LatencySketch> sketches = latencySketches.get(sourceNode);
+        return sketches == null ? null : sketches.get(destNode);
     }
 
     public int getLatency(String sourceNode, String destNode) {
+        // a frozen graph always answers from its CSR form, which never changes
+        if(frozen || this.adjacencyList == null) {
+            CompactGraph compact = compact();
+            return compact.latency(compact.serviceId(sourceNode), compact.serviceId(destNode));
+        }
+
         Map<String, Integer> adjacentNodes = this.adjacencyList.get(sourceNode);
 
         if(adjacentNodes!= null &&
@@ -31,7 +131,47 @@ public class Graph {
         return -1;
     }
 
+    // read-only for a frozen graph
     public Map<String, Map<String, Integer>> getAdjacencyList() {
+        Map<String, Map<String, Integer>> adjacencyList = this.adjacencyList;
+        if(adjacencyList == null) {
+            CompactGraph compact = this.compactGraph;
+            int[] offsets = compact.offsets();
+            int[] targets = compact.targets();
+            int[] latencies = compact.latencies();
+
+            Map<String, Map<String, Integer>> adjacency = new HashMap<>();
+            for(int node = 0; node < compact.nodeCount(); node++) {
+                Map<String, Integer> adjacentNodes = new HashMap<>();
+                for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    adjacentNodes.put(services.nameOf(targets[edge]), latencies[edge]);
+                }
+                adjacency.put(services.nameOf(node), frozen ? Collections.unmodifiableMap(adjacentNodes) : adjacentNodes);
+            }
+            adjacencyList = frozen ? Collections.unmodifiableMap(adjacency) : adjacency;
+            this.adjacencyList = adjacencyList;
+        }
         return adjacencyList;
     }
+
+    public CompactGraph compact() {
+        CompactGraph compact = this.compactGraph;
+        if(compact == null) {
+            CompactGraph.Builder builder = new CompactGraph.Builder(services);
+            for(Map.Entry<String, Map<String, Integer>> node: adjacencyList.entrySet()) {
+                int sourceId = services.idOf(node.getKey());
+                for(Map.Entry<String, Integer> adjNode: node.getValue().entrySet()) {
+                    builder.addEdge(sourceId, services.intern(adjNode.getKey()), adjNode.getValue());
+                }
+            }
+
+            compact = builder.build();
+            this.compactGraph = compact;
+        }
+        return compact;
+    }
+
+    private void checkMutable() {
+        if(frozen) throw new UnsupportedOperationException("Graph version is frozen, change a mutable copy instead");
+    }
 }
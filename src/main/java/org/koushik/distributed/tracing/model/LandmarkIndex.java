@@ -0,0 +1,76 @@
+package org.koushik.distributed.tracing.model;
+
+/**
+ * Shortest trace latencies from and to a few landmark services of one graph snapshot, giving
+ * lower bounds on the latency between any two services by the triangle inequality
+ * (the ALT heuristic): {@code d(u, v) >= d(u, L) - d(v, L)} and {@code d(u, v) >= d(L, v) - d(L, u)}.
+ * <p>
+ * Distances are stored service-major, the landmarks of one service next to each other, so a bound
+ * reads two short runs of ints. {@link #NO_TRACE} marks services a landmark cannot reach or be
+ * reached from.
+ */
+public final class LandmarkIndex {
+    public static final int NO_TRACE = ShortestLatencyIndex.NO_TRACE;
+
+    private final int[] landmarks;
+    private final int nodeCount;
+    // fromLandmarks[node * landmarks + i] = d(landmark i, node), toLandmarks[node * landmarks + i] = d(node, landmark i)
+    private final int[] fromLandmarks;
+    private final int[] toLandmarks;
+
+    public LandmarkIndex(int[] landmarks, int nodeCount, int[] fromLandmarks, int[] toLandmarks) {
+        if(landmarks.length == 0) throw new IllegalArgumentException("Index needs at least one landmark");
+        if(fromLandmarks.length != landmarks.length * nodeCount || toLandmarks.length != landmarks.length * nodeCount)
+            throw new IllegalArgumentException("Index needs " + nodeCount + " x " + landmarks.length + " latencies each way");
+        this.landmarks = landmarks;
+        this.nodeCount = nodeCount;
+        this.fromLandmarks = fromLandmarks;
+        this.toLandmarks = toLandmarks;
+    }
+
+    /**
+     * Lower bound on the latency of the shortest trace from one service to another, NO_TRACE when
+     * the landmarks prove there is none: e.g. when a landmark reaches {@code from} but not {@code to}.
+     */
+    public int lowerBound(int from, int to) {
+        int count = landmarks.length;
+        int fromRow = from * count, toRow = to * count;
+        int bound = 0;
+
+        for(int landmark = 0; landmark < count; landmark++) {
+            int fromToLandmark = toLandmarks[fromRow + landmark];
+            int toToLandmark = toLandmarks[toRow + landmark];
+            if(toToLandmark != NO_TRACE) {
+                // to reaches the landmark, from would too through to
+                if(fromToLandmark == NO_TRACE) return NO_TRACE;
+                bound = Math.max(bound, fromToLandmark - toToLandmark);
+            }
+
+            int landmarkToFrom = fromLandmarks[fromRow + landmark];
+            int landmarkToTo = fromLandmarks[toRow + landmark];
+            if(landmarkToFrom != NO_TRACE) {
+                // the landmark reaches from, it would reach to through from
+                if(landmarkToTo == NO_TRACE) return NO_TRACE;
+                bound = Math.max(bound, landmarkToTo - landmarkToFrom);
+            }
+        }
+        return bound;
+    }
+
+    public int landmarkCount() {
+        return landmarks.length;
+    }
+
+    public int landmark(int index) {
+        return landmarks[index];
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    // bytes needed by an index over the given number of services and landmarks
+    public static long sizeInBytes(int nodeCount, int landmarkCount) {
+        return 2L * nodeCount * landmarkCount * Integer.BYTES;
+    }
+}
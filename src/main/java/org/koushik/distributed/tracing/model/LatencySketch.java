@@ -0,0 +1,161 @@
+package org.koushik.distributed.tracing.model;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable latency distribution of one connection with fixed memory, in the style of an HDR
+ * histogram.
+ * <p>
+ * Latencies below {@code 2^PRECISION_BITS} get a bucket each; above that every power of two range
+ * is split into {@code 2^PRECISION_BITS} linear sub-buckets, so any recorded value is known to
+ * within 1 / 2^PRECISION_BITS (about 3%) of itself. Latencies up to {@link Integer#MAX_VALUE}
+ * need at most {@link #MAX_BUCKETS} (864) buckets whatever the traffic volume; the bucket array
+ * only grows up to the largest latency seen. Count, sum, min and max are exact.
+ * <p>
+ * Sketches {@link #merge(LatencySketch) merge} by adding bucket counts, and
+ * {@link #convolve(LatencySketch) convolve} into the distribution of the sum of two independent
+ * latencies, which gives percentile estimates for a whole trace. Not thread safe.
+ */
+public final class LatencySketch {
+    public static final int PRECISION_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+    public static final int MAX_BUCKETS = bucketOf(Integer.MAX_VALUE) + 1;
+
+    // total weight a convolution result is scaled to: keeps tail buckets down to a probability of 1e-9
+    // while weight x latency still fits into the long sum
+    private static final double CONVOLUTION_SCALE = 1L << 30;
+
+    private long[] counts = new long[0];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public static LatencySketch of(long... latencies) {
+        LatencySketch sketch = new LatencySketch();
+        for(long latency: latencies) sketch.record(latency);
+        return sketch;
+    }
+
+    public void record(long latency) {
+        record(latency, 1);
+    }
+
+    // latencies are clamped into 0..Integer.MAX_VALUE, the range of the graph latencies
+    public void record(long latency, long times) {
+        if(times <= 0) return;
+        latency = Math.max(0, Math.min(Integer.MAX_VALUE, latency));
+
+        int bucket = bucketOf(latency);
+        if(bucket >= counts.length) counts = Arrays.copyOf(counts, bucket + 1);
+        counts[bucket] += times;
+
+        count += times;
+        sum += latency * times;
+        min = Math.min(min, latency);
+        max = Math.max(max, latency);
+    }
+
+    public void merge(LatencySketch other) {
+        if(other.count == 0) return;
+        if(other.counts.length > counts.length) counts = Arrays.copyOf(counts, other.counts.length);
+        for(int bucket = 0; bucket < other.counts.length; bucket++) counts[bucket] += other.counts[bucket];
+
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Distribution of this latency plus the other one, assuming the two are independent.
+     * Every pair of non-empty buckets adds its joint probability to the bucket of the summed
+     * representative values, so the cost is O(buckets^2) and independent of the number of calls.
+     * The counts of the result are weights (scaled to about 2^30), min and max stay exact.
+     */
+    public LatencySketch convolve(LatencySketch other) {
+        LatencySketch result = new LatencySketch();
+        if(count == 0 || other.count == 0) return result;
+
+        double[] weights = new double[MAX_BUCKETS];
+        int maxBucket = 0;
+        for(int left = 0; left < counts.length; left++) {
+            if(counts[left] == 0) continue;
+            double leftWeight = (double) counts[left] / count;
+            long leftValue = bucketValue(left);
+
+            for(int right = 0; right < other.counts.length; right++) {
+                if(other.counts[right] == 0) continue;
+                int bucket = bucketOf(Math.min(Integer.MAX_VALUE, leftValue + bucketValue(right)));
+                weights[bucket] += leftWeight * other.counts[right] / other.count;
+                maxBucket = Math.max(maxBucket, bucket);
+            }
+        }
+
+        result.counts = new long[maxBucket + 1];
+        for(int bucket = 0; bucket <= maxBucket; bucket++) {
+            long weight = Math.round(weights[bucket] * CONVOLUTION_SCALE);
+            result.counts[bucket] = weight;
+            result.count += weight;
+        }
+        result.min = Math.min(Integer.MAX_VALUE, min + other.min);
+        result.max = Math.min(Integer.MAX_VALUE, max + other.max);
+        result.sum = Math.round((mean() + other.mean()) * result.count);
+        return result;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return count == 0 ? 0 : max;
+    }
+
+    // latency at the given quantile (0..1), nearest-rank on the buckets and kept within min..max
+    public long percentile(double quantile) {
+        if(quantile < 0 || quantile > 1) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+        if(count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        if(rank >= count) return max;
+        long seen = 0;
+        for(int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if(seen >= rank) return Math.max(min, Math.min(max, bucketValue(bucket)));
+        }
+        return max;
+    }
+
+    public LatencySketch copy() {
+        LatencySketch copy = new LatencySketch();
+        copy.merge(this);
+        return copy;
+    }
+
+    static int bucketOf(long latency) {
+        if(latency < SUB_BUCKETS) return (int) latency;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(latency);
+        int shift = exponent - PRECISION_BITS;
+        int subBucket = (int) (latency >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // middle of the bucket's value range
+    static long bucketValue(int bucket) {
+        if(bucket < SUB_BUCKETS) return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >>> 1);
+    }
+}
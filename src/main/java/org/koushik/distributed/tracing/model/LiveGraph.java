@@ -0,0 +1,231 @@
+package org.koushik.distributed.tracing.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Mutable, int-indexed service graph for topologies whose connections change while they are
+ * queried, e.g. latencies fed from a metrics stream.
+ * <p>
+ * Every service keeps its out-connections and in-connections in small primitive arrays, so
+ * connections can be added, removed or re-weighted in O(degree) without rebuilding anything.
+ * {@link ChangeListener listeners} are told about every change, which lets derived results (like
+ * cached shortest traces) repair themselves instead of being recomputed.
+ * {@link #snapshot()} freezes the current state into a {@link CompactGraph} for all other queries.
+ * <p>
+ * An existing topology is made live with {@link #from(CompactGraph)}; latency updates then come
+ * from {@link #setLatency}, e.g. fed by a {@code SpanIngestor} as its connection means move.
+ */
+public class LiveGraph {
+    public static final int NO_CONNECTION = -1;
+
+    @FunctionalInterface
+    public interface ChangeListener {
+        // old or new latency is NO_CONNECTION when the connection was added or removed
+        void onConnectionChanged(int sourceId, int destId, int oldLatency, int newLatency);
+    }
+
+    private final ServiceDictionary services = new ServiceDictionary();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private int[][] outTargets = new int[16][];
+    private int[][] outLatencies = new int[16][];
+    private int[] outDegrees = new int[16];
+    private int[][] inSources = new int[16][];
+    private int[][] inLatencies = new int[16][];
+    private int[] inDegrees = new int[16];
+    private int connectionCount;
+
+    // live copy of a parsed or loaded topology, with the same service ids
+    public static LiveGraph from(CompactGraph graph) {
+        LiveGraph live = new LiveGraph();
+        ServiceDictionary services = graph.services();
+        for(int id = 0; id < graph.nodeCount(); id++) live.addService(services.nameOf(id));
+
+        // CSR targets are unique per service, so connections are appended without looking them up
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+        for(int node = 0; node < graph.nodeCount(); node++) {
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                live.appendOut(node, targets[edge], latencies[edge]);
+                live.appendIn(targets[edge], node, latencies[edge]);
+            }
+        }
+        live.connectionCount = graph.edgeCount();
+        return live;
+    }
+
+    public synchronized int addService(String service) {
+        int id = services.intern(service);
+        if(id >= outDegrees.length) {
+            int capacity = Math.max(outDegrees.length << 1, id + 1);
+            outTargets = Arrays.copyOf(outTargets, capacity);
+            outLatencies = Arrays.copyOf(outLatencies, capacity);
+            outDegrees = Arrays.copyOf(outDegrees, capacity);
+            inSources = Arrays.copyOf(inSources, capacity);
+            inLatencies = Arrays.copyOf(inLatencies, capacity);
+            inDegrees = Arrays.copyOf(inDegrees, capacity);
+        }
+        if(outTargets[id] == null) {
+            outTargets[id] = new int[4];
+            outLatencies[id] = new int[4];
+            inSources[id] = new int[4];
+            inLatencies[id] = new int[4];
+        }
+        return id;
+    }
+
+    /**
+     * Adds the connection, or re-weights it when it already exists.
+     * Returns the previous latency, NO_CONNECTION for a new connection.
+     */
+    public synchronized int setLatency(String sourceService, String destService, int latency) {
+        if(latency < 0) throw new IllegalArgumentException("Latency must not be negative: " + latency);
+
+        int sourceId = addService(sourceService);
+        int destId = addService(destService);
+
+        int outIdx = indexOf(outTargets[sourceId], outDegrees[sourceId], destId);
+        int oldLatency;
+        if(outIdx >= 0) {
+            oldLatency = outLatencies[sourceId][outIdx];
+            if(oldLatency == latency) return oldLatency;
+
+            outLatencies[sourceId][outIdx] = latency;
+            inLatencies[destId][indexOf(inSources[destId], inDegrees[destId], sourceId)] = latency;
+        } else {
+            oldLatency = NO_CONNECTION;
+            appendOut(sourceId, destId, latency);
+            appendIn(destId, sourceId, latency);
+            connectionCount++;
+        }
+
+        notifyListeners(sourceId, destId, oldLatency, latency);
+        return oldLatency;
+    }
+
+    // removes the connection, returns its latency or NO_CONNECTION when there was none
+    public synchronized int removeConnection(String sourceService, String destService) {
+        int sourceId = services.idOf(sourceService);
+        int destId = services.idOf(destService);
+        if(sourceId < 0 || destId < 0) return NO_CONNECTION;
+
+        int outIdx = indexOf(outTargets[sourceId], outDegrees[sourceId], destId);
+        if(outIdx < 0) return NO_CONNECTION;
+
+        int oldLatency = outLatencies[sourceId][outIdx];
+        removeAt(outTargets[sourceId], outLatencies[sourceId], outIdx, --outDegrees[sourceId]);
+        int inIdx = indexOf(inSources[destId], inDegrees[destId], sourceId);
+        removeAt(inSources[destId], inLatencies[destId], inIdx, --inDegrees[destId]);
+        connectionCount--;
+
+        notifyListeners(sourceId, destId, oldLatency, NO_CONNECTION);
+        return oldLatency;
+    }
+
+    public synchronized int latency(int sourceId, int destId) {
+        int outIdx = indexOf(outTargets[sourceId], outDegrees[sourceId], destId);
+        return outIdx < 0 ? NO_CONNECTION : outLatencies[sourceId][outIdx];
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public ServiceDictionary services() {
+        return services;
+    }
+
+    public synchronized int nodeCount() {
+        return services.size();
+    }
+
+    public synchronized int connectionCount() {
+        return connectionCount;
+    }
+
+    // out-connections of a service, valid up to outDegree(id); callers must hold the graph's lock
+    public int[] outTargets(int id) {
+        return outTargets[id];
+    }
+
+    public int[] outLatencies(int id) {
+        return outLatencies[id];
+    }
+
+    public int outDegree(int id) {
+        return outDegrees[id];
+    }
+
+    // in-connections of a service, valid up to inDegree(id); callers must hold the graph's lock
+    public int[] inSources(int id) {
+        return inSources[id];
+    }
+
+    public int[] inLatencies(int id) {
+        return inLatencies[id];
+    }
+
+    public int inDegree(int id) {
+        return inDegrees[id];
+    }
+
+    // freezes the current connections into a CSR graph over a copy of this graph's service ids,
+    // services registered later do not show up in the snapshot
+    public synchronized CompactGraph snapshot() {
+        CompactGraph.Builder builder = new CompactGraph.Builder(services.copy());
+        for(int node = 0; node < services.size(); node++) {
+            for(int i = 0; i < outDegrees[node]; i++) {
+                builder.addEdge(node, outTargets[node][i], outLatencies[node][i]);
+            }
+        }
+        return builder.build();
+    }
+
+    private void appendOut(int sourceId, int destId, int latency) {
+        int degree = outDegrees[sourceId];
+        if(degree == outTargets[sourceId].length) {
+            outTargets[sourceId] = Arrays.copyOf(outTargets[sourceId], degree << 1);
+            outLatencies[sourceId] = Arrays.copyOf(outLatencies[sourceId], degree << 1);
+        }
+        outTargets[sourceId][degree] = destId;
+        outLatencies[sourceId][degree] = latency;
+        outDegrees[sourceId]++;
+    }
+
+    private void appendIn(int destId, int sourceId, int latency) {
+        int degree = inDegrees[destId];
+        if(degree == inSources[destId].length) {
+            inSources[destId] = Arrays.copyOf(inSources[destId], degree << 1);
+            inLatencies[destId] = Arrays.copyOf(inLatencies[destId], degree << 1);
+        }
+        inSources[destId][degree] = sourceId;
+        inLatencies[destId][degree] = latency;
+        inDegrees[destId]++;
+    }
+
+    private void notifyListeners(int sourceId, int destId, int oldLatency, int newLatency) {
+        for(ChangeListener listener: listeners) {
+            listener.onConnectionChanged(sourceId, destId, oldLatency, newLatency);
+        }
+    }
+
+    private static int indexOf(int[] nodes, int degree, int node) {
+        for(int i = 0; i < degree; i++) {
+            if(nodes[i] == node) return i;
+        }
+        return -1;
+    }
+
+    // order within a service's connections does not matter, the last one fills the gap
+    private static void removeAt(int[] nodes, int[] latencies, int idx, int last) {
+        nodes[idx] = nodes[last];
+        latencies[idx] = latencies[last];
+    }
+}
@@ -0,0 +1,139 @@
+package org.koushik.distributed.tracing.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns service names into dense int ids (0..size-1) so graph algorithms can index arrays
+ * instead of hashing strings on every hop.
+ * <p>
+ * Open addressing table keyed by the same hash as {@link String#hashCode()}, which lets parsers
+ * look a name up straight from a {@code char[]} range and only create a String the first time
+ * a service is seen.
+ */
+public class ServiceDictionary {
+    private static final int EMPTY_SLOT = -1;
+
+    private String[] names = new String[16];
+    private int[] hashes = new int[16];
+    // slot -> service id, EMPTY_SLOT when free
+    private int[] table = newTable(32);
+    private int size;
+
+    public int intern(String service) {
+        int hash = service.hashCode();
+        int slot = findSlot(hash, service);
+        if(table[slot] != EMPTY_SLOT) return table[slot];
+
+        return add(slot, hash, service);
+    }
+
+    public int intern(char[] chars, int from, int to) {
+        int hash = hash(chars, from, to);
+        int slot = findSlot(hash, chars, from, to);
+        if(table[slot] != EMPTY_SLOT) return table[slot];
+
+        return add(slot, hash, new String(chars, from, to - from));
+    }
+
+    // returns -1 when the service is not part of the dictionary
+    public int idOf(String service) {
+        if(service == null) return -1;
+        return table[findSlot(service.hashCode(), service)];
+    }
+
+    public String nameOf(int id) {
+        if(id < 0 || id >= size) throw new IndexOutOfBoundsException("Unknown service id " + id);
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // independent copy with the same ids, e.g. for a frozen graph version the writer keeps interning past
+    public ServiceDictionary copy() {
+        ServiceDictionary copy = new ServiceDictionary();
+        copy.names = names.clone();
+        copy.hashes = hashes.clone();
+        copy.table = table.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    public List<String> names() {
+        return List.of(Arrays.copyOf(names, size));
+    }
+
+    private int add(int slot, int hash, String service) {
+        if(size == names.length) {
+            names = Arrays.copyOf(names, size << 1);
+            hashes = Arrays.copyOf(hashes, size << 1);
+        }
+        int id = size++;
+        names[id] = service;
+        hashes[id] = hash;
+        table[slot] = id;
+
+        // keep the load factor at or below one half
+        if(size << 1 > table.length) rehash();
+        return id;
+    }
+
+    private int findSlot(int hash, String service) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while(true) {
+            int id = table[slot];
+            if(id == EMPTY_SLOT || (hashes[id] == hash && names[id].equals(service))) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int findSlot(int hash, char[] chars, int from, int to) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while(true) {
+            int id = table[slot];
+            if(id == EMPTY_SLOT || (hashes[id] == hash && contentEquals(names[id], chars, from, to))) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash() {
+        int[] newTable = newTable(table.length << 1);
+        int mask = newTable.length - 1;
+        for(int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while(newTable[slot] != EMPTY_SLOT) slot = (slot + 1) & mask;
+            newTable[slot] = id;
+        }
+        table = newTable;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] newTable = new int[capacity];
+        Arrays.fill(newTable, EMPTY_SLOT);
+        return newTable;
+    }
+
+    // same polynomial as String.hashCode so both lookups land on the same slot
+    private static int hash(char[] chars, int from, int to) {
+        int hash = 0;
+        for(int i = from; i < to; i++) hash = 31 * hash + chars[i];
+        return hash;
+    }
+
+    // spread the low bits, String.hashCode of short names clusters badly otherwise
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String name, char[] chars, int from, int to) {
+        if(name.length() != to - from) return false;
+        for(int i = 0; i < name.length(); i++) {
+            if(name.charAt(i) != chars[from + i]) return false;
+        }
+        return true;
+    }
+}
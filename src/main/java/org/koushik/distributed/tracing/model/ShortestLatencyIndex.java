@@ -0,0 +1,33 @@
+package org.koushik.distributed.tracing.model;
+
+/**
+ * Precomputed shortest trace latencies between all pairs of services of one graph snapshot,
+ * stored row-major in a flat {@code int[]} so a lookup is a single array read.
+ * {@link #NO_TRACE} marks pairs without any trace.
+ */
+public final class ShortestLatencyIndex {
+    public static final int NO_TRACE = Integer.MAX_VALUE;
+
+    private final int nodeCount;
+    private final int[] latencies;
+
+    public ShortestLatencyIndex(int nodeCount, int[] latencies) {
+        if(latencies.length != nodeCount * nodeCount)
+            throw new IllegalArgumentException("Index needs " + nodeCount + " x " + nodeCount + " latencies");
+        this.nodeCount = nodeCount;
+        this.latencies = latencies;
+    }
+
+    public int latency(int sourceId, int destId) {
+        return latencies[sourceId * nodeCount + destId];
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    // bytes needed by an index over the given number of services
+    public static long sizeInBytes(int nodeCount) {
+        return (long) nodeCount * nodeCount * Integer.BYTES;
+    }
+}
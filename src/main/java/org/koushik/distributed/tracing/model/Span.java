@@ -0,0 +1,12 @@
+package org.koushik.distributed.tracing.model;
+
+/**
+ * One span of a distributed trace as reported by a collector. The parent span id is null for the
+ * root span of a trace, the duration is in the same unit as the graph latencies.
+ */
+public record Span(String traceId, String spanId, String parentSpanId, String service, long duration) {
+
+    public boolean isRoot() {
+        return parentSpanId == null;
+    }
+}
@@ -0,0 +1,28 @@
+package org.koushik.distributed.tracing.model;
+
+import java.util.List;
+
+/**
+ * A trace through the service graph with the services it passes, in call order, and its total
+ * latency.
+ */
+public record TracePath(int latency, List<String> services) {
+
+    public TracePath {
+        services = List.copyOf(services);
+    }
+
+    public int hops() {
+        return services.size() - 1;
+    }
+
+    // the services joined the way traces are written in queries, e.g. A-B-C
+    public String trace() {
+        return String.join("-", services);
+    }
+
+    @Override
+    public String toString() {
+        return trace() + ":" + latency;
+    }
+}
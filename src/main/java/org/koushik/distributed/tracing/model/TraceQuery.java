@@ -0,0 +1,38 @@
+package org.koushik.distributed.tracing.model;
+
+/**
+ * One question asked about a service graph. Queries are planned and answered in batches by the
+ * query planner, which shares the graph work between queries of the same kind and source.
+ */
+public sealed interface TraceQuery {
+
+    // total latency of the given trace, e.g. A-B-C
+    record TraceLatency(String trace) implements TraceQuery {}
+
+    // p50 and p99 latency estimates of the given trace from the latency sketches of its connections
+    record TracePercentiles(String trace) implements TraceQuery {}
+
+    // number of traces with 1..maxHops hops, ending the first time they reach the destination
+    record MaxHops(String source, String destination, int maxHops) implements TraceQuery {}
+
+    // number of traces with exactly the given hops
+    record ExactHops(String source, String destination, int hops) implements TraceQuery {}
+
+    // latency of the shortest trace
+    record ShortestTrace(String source, String destination) implements TraceQuery {}
+
+    // the given number of lowest latency simple traces with their services
+    record ShortestTraces(String source, String destination, int count) implements TraceQuery {}
+
+    // number of traces with a total latency below the limit
+    record WithinLatency(String source, String destination, int latencyLimit) implements TraceQuery {}
+
+    // the traces themselves behind a max-hops, exact-hops or within-latency count
+    record ListTraces(TraceQuery count) implements TraceQuery {
+
+        public ListTraces {
+            if(!(count instanceof MaxHops || count instanceof ExactHops || count instanceof WithinLatency))
+                throw new IllegalArgumentException("only hop and latency counts can be listed");
+        }
+    }
+}
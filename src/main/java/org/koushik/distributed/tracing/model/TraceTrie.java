@@ -0,0 +1,123 @@
+package org.koushik.distributed.tracing.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enumerated traces stored as a prefix trie in parent-pointer int arrays, so a prefix shared by
+ * many traces is stored once and a trace is a single int: the trie node of its last service.
+ * <p>
+ * Node {@code 0} is the root holding the source service. Every other node holds a service, its
+ * parent node and the total latency of the trace up to it. Nodes are added in depth-first order,
+ * so the subtree of a node is always a suffix of the arrays and an enumeration can drop a branch
+ * that did not lead to any trace with {@link #truncate(int)}.
+ */
+public final class TraceTrie {
+    public static final int ROOT = 0;
+
+    private final ServiceDictionary services;
+    private int[] parents = new int[16];
+    private int[] serviceIds = new int[16];
+    private int[] latencies = new int[16];
+    private int[] hops = new int[16];
+    private int size = 1;
+
+    // last node of every trace, in the order the traces were found
+    private int[] traces = new int[16];
+    private int traceCount;
+    private boolean capped;
+
+    public TraceTrie(ServiceDictionary services, int source) {
+        this.services = services;
+        parents[ROOT] = -1;
+        serviceIds[ROOT] = source;
+    }
+
+    // a trie without traces, for queries about unknown services
+    public static TraceTrie empty() {
+        return new TraceTrie(new ServiceDictionary(), -1);
+    }
+
+    // appends a child of the given node and returns it
+    public int add(int parent, int serviceId, int latency) {
+        if(size == parents.length) {
+            int newLength = size << 1;
+            parents = Arrays.copyOf(parents, newLength);
+            serviceIds = Arrays.copyOf(serviceIds, newLength);
+            latencies = Arrays.copyOf(latencies, newLength);
+            hops = Arrays.copyOf(hops, newLength);
+        }
+        parents[size] = parent;
+        serviceIds[size] = serviceId;
+        latencies[size] = latencies[parent] + latency;
+        hops[size] = hops[parent] + 1;
+        return size++;
+    }
+
+    // drops every node from the given one on, none of them may end a trace
+    public void truncate(int newSize) {
+        if(newSize < 1 || newSize > size) throw new IllegalArgumentException("Invalid trie size " + newSize);
+        if(traceCount > 0 && traces[traceCount - 1] >= newSize)
+            throw new IllegalStateException("Cannot drop nodes of a trace");
+        size = newSize;
+    }
+
+    public void addTrace(int node) {
+        if(traceCount == traces.length) traces = Arrays.copyOf(traces, traceCount << 1);
+        traces[traceCount++] = node;
+    }
+
+    // marks the enumeration as stopped at its result cap, more traces may exist
+    public void markCapped() {
+        capped = true;
+    }
+
+    public boolean isCapped() {
+        return capped;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int traceCount() {
+        return traceCount;
+    }
+
+    // last node of the trace with the given index
+    public int trace(int index) {
+        if(index < 0 || index >= traceCount) throw new IndexOutOfBoundsException(index);
+        return traces[index];
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int serviceId(int node) {
+        return serviceIds[node];
+    }
+
+    // total latency of the trace from the root to the node
+    public int latency(int node) {
+        return latencies[node];
+    }
+
+    public int hops(int node) {
+        return hops[node];
+    }
+
+    // the services of the trace ending at the node, from the source on
+    public List<String> services(int node) {
+        String[] names = new String[hops[node] + 1];
+        for(int current = node; current >= 0; current = parents[current]) {
+            names[hops[current]] = services.nameOf(serviceIds[current]);
+        }
+        return new ArrayList<>(Arrays.asList(names));
+    }
+
+    public TracePath path(int node) {
+        return new TracePath(latencies[node], services(node));
+    }
+}
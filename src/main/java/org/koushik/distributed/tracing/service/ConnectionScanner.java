@@ -0,0 +1,204 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass, regex-free scanner for one connection line, e.g. {@code AB5, checkout->payments:12}.
+ * <p>
+ * Characters are pushed one at a time, so a line can be fed in any number of chunks; every valid
+ * connection is validated and emitted to the {@link ConnectionSink} as soon as its token ends.
+ * Service names are resolved through the {@link ServiceDictionary} from a reusable char buffer,
+ * so no String is created except the first time a service is seen. Call {@link #endLine()} after
+ * the last character of a line; the scanner is then ready for the next one.
+ */
+public final class ConnectionScanner {
+
+    @FunctionalInterface
+    public interface ConnectionSink {
+        void accept(int sourceId, int destId, int latency);
+    }
+
+    private static final int BEFORE_TOKEN = 0;
+    private static final int SOURCE_NAME = 1;
+    private static final int ARROW = 2;
+    private static final int DEST_NAME = 3;
+    private static final int LATENCY = 4;
+    private static final int AFTER_TOKEN = 5;
+
+    private final ServiceDictionary dictionary;
+    private final ConnectionSink sink;
+
+    // current token; for the legacy AB5 form the whole token sits in the name buffer
+    private char[] names = new char[32];
+    private int namesLength;
+    private int sourceEnd;
+    private boolean delimited;
+    private long latency;
+    private int latencyDigits;
+
+    private int state = BEFORE_TOKEN;
+    private long column;
+    private long tokenColumn;
+    private int connectionsInLine;
+
+    public ConnectionScanner(ServiceDictionary dictionary, ConnectionSink sink) {
+        this.dictionary = dictionary;
+        this.sink = sink;
+    }
+
+    public ConnectionScanner feed(CharSequence chunk) {
+        return feed(chunk, 0, chunk.length());
+    }
+
+    public ConnectionScanner feed(CharSequence chunk, int from, int to) {
+        for(int i = from; i < to; i++) {
+            accept(chunk.charAt(i));
+        }
+        return this;
+    }
+
+    public void accept(char ch) {
+        column++;
+
+        switch (state) {
+            case BEFORE_TOKEN -> {
+                if(isWhitespace(ch)) return;
+                if(!isNameChar(ch)) throw new InvalidConnectionException(column);
+
+                tokenColumn = column;
+                namesLength = 0;
+                delimited = false;
+                latency = 0;
+                latencyDigits = 0;
+                appendName(ch);
+                state = SOURCE_NAME;
+            }
+            case SOURCE_NAME -> {
+                if(isNameChar(ch)) {
+                    appendName(ch);
+                } else if(ch == '-') {
+                    sourceEnd = namesLength;
+                    delimited = true;
+                    state = ARROW;
+                } else {
+                    endTokenOn(ch);
+                }
+            }
+            case ARROW -> {
+                if(ch != '>') throw new InvalidConnectionException(tokenColumn);
+                state = DEST_NAME;
+            }
+            case DEST_NAME -> {
+                if(isNameChar(ch)) {
+                    appendName(ch);
+                } else if(ch == ':' && namesLength > sourceEnd) {
+                    state = LATENCY;
+                } else {
+                    throw new InvalidConnectionException(tokenColumn);
+                }
+            }
+            case LATENCY -> {
+                if(ch >= '0' && ch <= '9') {
+                    latency = latency * 10 + (ch - '0');
+                    latencyDigits++;
+                    if(latency > Integer.MAX_VALUE) throw new InvalidConnectionException(tokenColumn);
+                } else {
+                    endTokenOn(ch);
+                }
+            }
+            case AFTER_TOKEN -> {
+                if(ch == ',') {
+                    emitToken();
+                    state = BEFORE_TOKEN;
+                } else if(!isWhitespace(ch)) {
+                    throw new InvalidConnectionException(tokenColumn);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown scanner state " + state);
+        }
+    }
+
+    /**
+     * Completes the current line and returns the number of connections emitted for it.
+     * An empty line or a dangling ',' is rejected like any other bad token.
+     */
+    public int endLine() {
+        try {
+            switch (state) {
+                case SOURCE_NAME, LATENCY, AFTER_TOKEN -> emitToken();
+                case BEFORE_TOKEN -> throw new InvalidConnectionException(Math.max(column, 1));
+                default -> throw new InvalidConnectionException(tokenColumn);
+            }
+            return connectionsInLine;
+        } finally {
+            reset();
+        }
+    }
+
+    public void reset() {
+        state = BEFORE_TOKEN;
+        column = 0;
+        connectionsInLine = 0;
+    }
+
+    private void endTokenOn(char ch) {
+        if(ch == ',') {
+            emitToken();
+            state = BEFORE_TOKEN;
+        } else if(isWhitespace(ch)) {
+            state = AFTER_TOKEN;
+        } else {
+            throw new InvalidConnectionException(tokenColumn);
+        }
+    }
+
+    private void emitToken() {
+        int sourceId, destId;
+
+        if(delimited) {
+            if(latencyDigits == 0) throw new InvalidConnectionException(tokenColumn);
+
+            sourceId = dictionary.intern(names, 0, sourceEnd);
+            destId = dictionary.intern(names, sourceEnd, namesLength);
+        } else {
+            // legacy form - two capital letters followed by the latency digits, e.g. AB5
+            if(namesLength < 3 || !isCapital(names[0]) || !isCapital(names[1]))
+                throw new InvalidConnectionException(tokenColumn);
+
+            for(int i = 2; i < namesLength; i++) {
+                char digit = names[i];
+                if(digit < '0' || digit > '9') throw new InvalidConnectionException(tokenColumn);
+
+                latency = latency * 10 + (digit - '0');
+                if(latency > Integer.MAX_VALUE) throw new InvalidConnectionException(tokenColumn);
+            }
+
+            sourceId = dictionary.intern(names, 0, 1);
+            destId = dictionary.intern(names, 1, 2);
+        }
+
+        sink.accept(sourceId, destId, (int) latency);
+        connectionsInLine++;
+    }
+
+    private void appendName(char ch) {
+        if(namesLength == names.length) names = Arrays.copyOf(names, namesLength << 1);
+        names[namesLength++] = ch;
+    }
+
+    // the characters a service name is made of, spans are held to the same names
+    static boolean isNameChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9')
+                || ch == '_' || ch == '.';
+    }
+
+    private static boolean isCapital(char ch) {
+        return ch >= 'A' && ch <= 'Z';
+    }
+
+    static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r';
+    }
+}
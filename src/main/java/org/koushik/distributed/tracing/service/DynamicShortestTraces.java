@@ -0,0 +1,220 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.IndexedMinHeap;
+import org.koushik.distributed.tracing.model.LiveGraph;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shortest trace latencies on a {@link LiveGraph}, kept up to date as connections change.
+ * <p>
+ * The shortest-path tree of every queried source (distances plus parent pointers) is cached.
+ * On a connection change only the affected part of each tree is repaired:
+ * <ul>
+ *     <li>a new or cheaper connection - distances that improve through it are propagated with a
+ *     Dijkstra search starting at its destination</li>
+ *     <li>a removed or more expensive tree connection - only the subtree hanging below it is reset
+ *     and settled again from the unaffected services around it</li>
+ *     <li>any other change - nothing to do</li>
+ * </ul>
+ * At most {@code maxCachedSources} trees are kept, the least recently queried one is dropped first.
+ * All work happens under the graph's lock, so updates and queries can come from any thread.
+ */
+public class DynamicShortestTraces implements LiveGraph.ChangeListener {
+    public static final int NO_TRACE = ShortestTraceSearch.NO_TRACE;
+    private static final int NO_PARENT = -1;
+
+    private final LiveGraph graph;
+    private final Map<Integer, SourceTree> trees;
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    private int[] queue = new int[16];
+    private boolean[] affected = new boolean[16];
+
+    public DynamicShortestTraces(LiveGraph graph, int maxCachedSources) {
+        this.graph = graph;
+        // access ordered, so the eldest entry is the least recently queried source
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SourceTree> eldest) {
+                return size() > maxCachedSources;
+            }
+        };
+        graph.addListener(this);
+    }
+
+    /**
+     * Latency of the shortest trace from source to destination, NO_TRACE when there is none.
+     * As everywhere else a trace has at least one hop, so source == destination gives the shortest cycle.
+     */
+    public int shortestTrace(String source, String destination) {
+        synchronized (graph) {
+            int sourceId = graph.services().idOf(source);
+            int destId = graph.services().idOf(destination);
+            if(sourceId < 0 || destId < 0) return NO_TRACE;
+
+            SourceTree tree = trees.get(sourceId);
+            if(tree == null) {
+                tree = new SourceTree(sourceId, graph.nodeCount());
+                settleFrom(tree, sourceId);
+                trees.put(sourceId, tree);
+            }
+
+            if(destId != sourceId) return tree.distance(destId);
+
+            // the cycle back to the source closes over one of its in-connections
+            long shortestCycle = NO_TRACE;
+            int[] inSources = graph.inSources(sourceId);
+            int[] inLatencies = graph.inLatencies(sourceId);
+            for(int i = 0; i < graph.inDegree(sourceId); i++) {
+                int distance = tree.distance(inSources[i]);
+                if(distance != NO_TRACE) shortestCycle = Math.min(shortestCycle, (long) distance + inLatencies[i]);
+            }
+            return (int) Math.min(shortestCycle, NO_TRACE);
+        }
+    }
+
+    public int cachedSources() {
+        synchronized (graph) {
+            return trees.size();
+        }
+    }
+
+    // called by the live graph under its lock
+    @Override
+    public void onConnectionChanged(int sourceId, int destId, int oldLatency, int newLatency) {
+        for(SourceTree tree: trees.values()) {
+            tree.ensureCapacity(graph.nodeCount());
+
+            boolean cheaper = oldLatency == LiveGraph.NO_CONNECTION
+                    || (newLatency != LiveGraph.NO_CONNECTION && newLatency < oldLatency);
+            if(cheaper) {
+                repairDecrease(tree, sourceId, destId, newLatency);
+            } else if(tree.parents[destId] == sourceId) {
+                repairIncrease(tree, destId);
+            }
+        }
+    }
+
+    private void repairDecrease(SourceTree tree, int sourceId, int destId, int latency) {
+        int sourceDistance = tree.distance(sourceId);
+        if(sourceDistance == NO_TRACE || destId == tree.source) return;
+
+        long candidate = (long) sourceDistance + latency;
+        if(candidate >= tree.distance(destId)) return;
+
+        tree.distances[destId] = (int) candidate;
+        tree.parents[destId] = sourceId;
+        settleFrom(tree, destId);
+    }
+
+    private void repairIncrease(SourceTree tree, int subtreeRoot) {
+        ensureScratchCapacity(graph.nodeCount());
+
+        // collect the subtree below the changed connection through the parent pointers
+        int size = 0;
+        queue[size++] = subtreeRoot;
+        affected[subtreeRoot] = true;
+        for(int head = 0; head < size; head++) {
+            int node = queue[head];
+            int[] targets = graph.outTargets(node);
+            for(int i = 0; i < graph.outDegree(node); i++) {
+                int child = targets[i];
+                if(!affected[child] && tree.parents[child] == node) {
+                    affected[child] = true;
+                    queue[size++] = child;
+                }
+            }
+        }
+
+        for(int i = 0; i < size; i++) {
+            tree.distances[queue[i]] = NO_TRACE;
+            tree.parents[queue[i]] = NO_PARENT;
+        }
+
+        // every affected service restarts from its best in-connection outside of the subtree
+        heap.ensureCapacity(tree.distances.length);
+        for(int i = 0; i < size; i++) {
+            int node = queue[i];
+            int[] inSources = graph.inSources(node);
+            int[] inLatencies = graph.inLatencies(node);
+            for(int j = 0; j < graph.inDegree(node); j++) {
+                int parent = inSources[j];
+                if(affected[parent] || tree.distance(parent) == NO_TRACE) continue;
+
+                long candidate = (long) tree.distance(parent) + inLatencies[j];
+                if(candidate < tree.distances[node]) {
+                    tree.distances[node] = (int) candidate;
+                    tree.parents[node] = parent;
+                }
+            }
+            if(tree.distances[node] != NO_TRACE) heap.offer(node, tree.distances[node]);
+        }
+
+        for(int i = 0; i < size; i++) affected[queue[i]] = false;
+        drainHeap(tree);
+    }
+
+    // Dijkstra from a service whose distance is already final, only improvements are followed
+    private void settleFrom(SourceTree tree, int start) {
+        heap.ensureCapacity(tree.distances.length);
+        heap.offer(start, tree.distances[start]);
+        drainHeap(tree);
+    }
+
+    private void drainHeap(SourceTree tree) {
+        while(!heap.isEmpty()) {
+            int distance = heap.minKey();
+            int node = heap.poll();
+
+            int[] targets = graph.outTargets(node);
+            int[] latencies = graph.outLatencies(node);
+            for(int i = 0; i < graph.outDegree(node); i++) {
+                int neighbour = targets[i];
+                long candidate = (long) distance + latencies[i];
+                if(neighbour != tree.source && candidate < tree.distances[neighbour]) {
+                    tree.distances[neighbour] = (int) candidate;
+                    tree.parents[neighbour] = node;
+                    heap.offer(neighbour, (int) candidate);
+                }
+            }
+        }
+    }
+
+    private void ensureScratchCapacity(int nodeCount) {
+        if(queue.length < nodeCount) {
+            queue = new int[nodeCount];
+            affected = new boolean[nodeCount];
+        }
+    }
+
+    // shortest-path tree of one source: the source sits at distance 0 and has no parent
+    private static final class SourceTree {
+        final int source;
+        int[] distances;
+        int[] parents;
+
+        SourceTree(int source, int nodeCount) {
+            this.source = source;
+            this.distances = new int[0];
+            this.parents = new int[0];
+            ensureCapacity(nodeCount);
+            distances[source] = 0;
+        }
+
+        int distance(int node) {
+            return node < distances.length ? distances[node] : NO_TRACE;
+        }
+
+        void ensureCapacity(int nodeCount) {
+            if(distances.length >= nodeCount) return;
+
+            int oldLength = distances.length;
+            distances = Arrays.copyOf(distances, nodeCount);
+            parents = Arrays.copyOf(parents, nodeCount);
+            Arrays.fill(distances, oldLength, nodeCount, NO_TRACE);
+            Arrays.fill(parents, oldLength, nodeCount, NO_PARENT);
+        }
+    }
+}
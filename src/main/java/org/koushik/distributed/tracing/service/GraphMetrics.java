@@ -0,0 +1,223 @@
+package org.koushik.distributed.tracing.service;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MXBean;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the graph operations.
+ * <p>
+ * Every {@link Operation} has its calls, a log2 histogram of their duration and the work the
+ * algorithms did for it: services expanded, connections relaxed, heap pushes, the deepest hop or
+ * latency layer reached and bytes parsed. Recorders are {@link LongAdder}s, so concurrent queries
+ * do not contend and recording allocates nothing; algorithms count in local variables and record
+ * once per call. Work is recorded by the algorithms themselves, so it also covers the searches
+ * run for the query planner and the shortest latency index. K shortest traces are computed one at
+ * a time, so every trace pulled counts as a call.
+ * <p>
+ * Metrics are on unless the JVM is started with {@code -Dtracing.metrics=false}. {@link #ENABLED}
+ * is a static final constant, so when it is off the JIT drops the recording calls and the local
+ * counters feeding them. The numbers are exported by {@link #dump()} and through JMX, see
+ * {@link #registerMBean()}.
+ */
+public final class GraphMetrics {
+    public static final String ENABLED_PROPERTY = "tracing.metrics";
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    public static final String OBJECT_NAME = "org.koushik.distributed.tracing:type=GraphMetrics";
+
+    // duration buckets 2^i .. 2^(i+1) - 1 nanoseconds, the last one takes everything above ~9 minutes
+    private static final int DURATION_BUCKETS = 40;
+
+    public enum Operation {
+        PARSE, BUILD_GRAPH, TRACE_LATENCY, TRACE_PERCENTILES, MAX_HOPS, EXACT_HOPS, WITHIN_LATENCY,
+        SHORTEST_TRACE, K_SHORTEST_TRACES, ENUMERATE_TRACES, QUERY_BATCH;
+
+        String metricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // JMX view of the metrics, registered by registerMBean()
+    @MXBean
+    public interface View {
+        String getDump();
+
+        // "<operation>.<counter>" -> value, e.g. "shortest_trace.edges_relaxed"
+        Map<String, Long> getCounters();
+
+        void reset();
+    }
+
+    private static final OperationStats[] STATS = new OperationStats[Operation.values().length];
+
+    static {
+        for(Operation operation: Operation.values()) STATS[operation.ordinal()] = new OperationStats();
+    }
+
+    private GraphMetrics() {
+    }
+
+    // start time of an operation for recordCall, 0 when metrics are off
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void recordCall(Operation operation, long startNanos) {
+        if(!ENABLED) return;
+
+        OperationStats stats = STATS[operation.ordinal()];
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        stats.calls.increment();
+        stats.totalNanos.add(nanos);
+        stats.durations[Math.min(DURATION_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos | 1))].increment();
+    }
+
+    public static void recordWork(Operation operation, long nodesExpanded, long edgesRelaxed, long heapPushes, long depth) {
+        if(!ENABLED) return;
+
+        OperationStats stats = STATS[operation.ordinal()];
+        if(nodesExpanded > 0) stats.nodesExpanded.add(nodesExpanded);
+        if(edgesRelaxed > 0) stats.edgesRelaxed.add(edgesRelaxed);
+        if(heapPushes > 0) stats.heapPushes.add(heapPushes);
+        if(depth > 0) stats.maxDepth.accumulate(depth);
+    }
+
+    public static void recordBytes(Operation operation, long bytes) {
+        if(!ENABLED) return;
+
+        STATS[operation.ordinal()].bytes.add(bytes);
+    }
+
+    public static long calls(Operation operation) {
+        return STATS[operation.ordinal()].calls.sum();
+    }
+
+    public static Map<String, Long> counters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for(Operation operation: Operation.values()) {
+            OperationStats stats = STATS[operation.ordinal()];
+            String prefix = operation.metricName() + ".";
+            counters.put(prefix + "calls", stats.calls.sum());
+            counters.put(prefix + "total_nanos", stats.totalNanos.sum());
+            counters.put(prefix + "nodes_expanded", stats.nodesExpanded.sum());
+            counters.put(prefix + "edges_relaxed", stats.edgesRelaxed.sum());
+            counters.put(prefix + "heap_pushes", stats.heapPushes.sum());
+            counters.put(prefix + "max_depth", stats.maxDepth.get());
+            counters.put(prefix + "bytes", stats.bytes.sum());
+        }
+        return counters;
+    }
+
+    /**
+     * One line per operation that was called, e.g.
+     * {@code shortest_trace calls=3 mean=2.1us p50<4.1us p99<8.2us nodes=12 edges=30 pushes=14 depth=0}.
+     * Percentiles are the upper bound of their power of two bucket; parsing adds its throughput.
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        if(!ENABLED) return dump.append("metrics disabled, -D").append(ENABLED_PROPERTY).append("=false\n").toString();
+
+        for(Operation operation: Operation.values()) {
+            OperationStats stats = STATS[operation.ordinal()];
+            long calls = stats.calls.sum();
+            if(calls == 0) continue;
+
+            long totalNanos = stats.totalNanos.sum();
+            dump.append(String.format(Locale.ROOT, "%s calls=%d mean=%s p50<%s p99<%s nodes=%d edges=%d pushes=%d depth=%d",
+                    operation.metricName(), calls, micros((double) totalNanos / calls),
+                    micros(stats.durationPercentile(calls, 0.5)), micros(stats.durationPercentile(calls, 0.99)),
+                    stats.nodesExpanded.sum(), stats.edgesRelaxed.sum(), stats.heapPushes.sum(), stats.maxDepth.get()));
+
+            long bytes = stats.bytes.sum();
+            if(bytes > 0) {
+                dump.append(String.format(Locale.ROOT, " bytes=%d rate=%.1fMB/s", bytes,
+                        totalNanos == 0 ? 0.0 : bytes * 1e3 / totalNanos));
+            }
+            dump.append('\n');
+        }
+        return dump.toString();
+    }
+
+    public static void reset() {
+        for(OperationStats stats: STATS) stats.reset();
+    }
+
+    /**
+     * Registers the {@link View} with the platform MBean server under {@link #OBJECT_NAME}, e.g.
+     * for jconsole. Registering again does nothing.
+     */
+    public static void registerMBean() {
+        View view = new View() {
+            @Override
+            public String getDump() {
+                return dump();
+            }
+
+            @Override
+            public Map<String, Long> getCounters() {
+                return counters();
+            }
+
+            @Override
+            public void reset() {
+                GraphMetrics.reset();
+            }
+        };
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(view, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // registered before
+        } catch (JMException ex) {
+            throw new IllegalStateException("Could not register the graph metrics MBean", ex);
+        }
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+    }
+
+    private static final class OperationStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] durations = new LongAdder[DURATION_BUCKETS];
+        private final LongAdder nodesExpanded = new LongAdder();
+        private final LongAdder edgesRelaxed = new LongAdder();
+        private final LongAdder heapPushes = new LongAdder();
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+        private final LongAdder bytes = new LongAdder();
+
+        OperationStats() {
+            for(int i = 0; i < DURATION_BUCKETS; i++) durations[i] = new LongAdder();
+        }
+
+        // exclusive upper bound in nanoseconds of the bucket holding the given quantile
+        double durationPercentile(long calls, double quantile) {
+            long rank = (long) Math.ceil(quantile * calls);
+            long seen = 0;
+            for(int bucket = 0; bucket < DURATION_BUCKETS; bucket++) {
+                seen += durations[bucket].sum();
+                if(seen >= rank) return Math.scalb(1.0, bucket + 1);
+            }
+            return Math.scalb(1.0, DURATION_BUCKETS);
+        }
+
+        void reset() {
+            calls.reset();
+            totalNanos.reset();
+            for(LongAdder bucket: durations) bucket.reset();
+            nodesExpanded.reset();
+            edgesRelaxed.reset();
+            heapPushes.reset();
+            maxDepth.reset();
+            bytes.reset();
+        }
+    }
+}
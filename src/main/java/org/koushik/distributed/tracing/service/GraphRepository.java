@@ -0,0 +1,87 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Publishes versions of the service graph with copy-on-write semantics.
+ * <p>
+ * Every version is a {@link Graph#freeze() frozen} graph held in one {@link AtomicReference}.
+ * Readers call {@link #current()} and query the version they got for as long as they like, without
+ * any lock; writers build the next version off to the side and swap it in atomically. A reader
+ * therefore always sees one complete version, never a topology half way through an update.
+ * <p>
+ * Given a landmark count, every version gets its {@link LandmarkIndexBuilder landmark index}
+ * before it is published, so shortest trace queries on it are guided from the first one on.
+ */
+public class GraphRepository {
+
+    public record Version(long number, Graph graph) {}
+
+    private final AtomicReference<Version> current;
+    // landmarks indexed for every version, 0 for none
+    private final int landmarkCount;
+
+    // starts with an empty version 0
+    public GraphRepository() {
+        this(new Graph(List.of()));
+    }
+
+    public GraphRepository(Graph initial) {
+        this(initial, 0);
+    }
+
+    public GraphRepository(Graph initial, int landmarkCount) {
+        if(landmarkCount < 0) throw new IllegalArgumentException("Landmark count must not be negative: " + landmarkCount);
+        this.landmarkCount = landmarkCount;
+        this.current = new AtomicReference<>(new Version(0, prepare(initial)));
+    }
+
+    public Version current() {
+        return current.get();
+    }
+
+    public Graph graph() {
+        return current.get().graph();
+    }
+
+    // replaces the whole topology, e.g. after reading a new topology file
+    public Version publish(Graph graph) {
+        Graph frozen = prepare(graph);
+        while(true) {
+            Version previous = current.get();
+            Version next = new Version(previous.number() + 1, frozen);
+            if(current.compareAndSet(previous, next)) return next;
+        }
+    }
+
+    /**
+     * Applies the change to a mutable copy of the current version and publishes the result.
+     * When another writer published in the meantime the change is applied again on top of that
+     * version, so the change must not have side effects besides the graph it is given.
+     */
+    public Version update(Consumer<Graph> change) {
+        while(true) {
+            Version previous = current.get();
+            Graph graph = previous.graph().mutableCopy();
+            change.accept(graph);
+
+            Version next = new Version(previous.number() + 1, prepare(graph));
+            if(current.compareAndSet(previous, next)) return next;
+        }
+    }
+
+    // the frozen version of the graph, with its landmark index when one is wanted
+    private Graph prepare(Graph graph) {
+        Graph frozen = graph.freeze();
+        if(landmarkCount > 0) {
+            CompactGraph compact = frozen.compact();
+            compact.attachLandmarkIndex(LandmarkIndexBuilder.build(compact, landmarkCount));
+        }
+        return frozen;
+    }
+}
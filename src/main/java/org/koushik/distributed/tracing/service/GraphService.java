@@ -1,266 +1,357 @@
 package org.koushik.distributed.tracing.service;
 
 import org.koushik.distributed.tracing.model.AllConnections;
+import org.koushik.distributed.tracing.model.CompactGraph;
 import org.koushik.distributed.tracing.model.ConnectionDetails;
-import org.koushik.distributed.tracing.model.ConnectionPair;
 import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.LatencySketch;
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+import org.koushik.distributed.tracing.model.ShortestLatencyIndex;
+import org.koushik.distributed.tracing.model.TracePath;
+import org.koushik.distributed.tracing.model.TraceTrie;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class GraphService {
-    // regex for allowing a valid connection with
-    // first two capital letter and then any digit in node connection input
-    private static final String VALID_GRAPH_CONN_REGEX_PATTERN = "^[A-Z]{2}\\d+$";
-
     public AllConnections parseInputServiceConnectionDetails(String input) {
-        if(!validateGraphNodesInput(input))
-            throw new IllegalArgumentException("Bad Input value(s)!");
+        long start = GraphMetrics.start();
+        try {
+            if(input == null) throw new InvalidConnectionException(1);
+
+            // taking a set for containing unique connections
+            // as we are parsing it from entire graph connection details
+            // where duplicate nodes exists
+            Set<String> allServices = new HashSet<>();
+            List<ConnectionDetails> allConnections = new ArrayList<>();
 
-        // remove if any whitespace is exists in node connections
-        String[] connections = Arrays.stream(input.split(","))
-                .map(String::trim).toArray(String[]::new);
+            // every service name is interned once, the graph and all algorithms work with its dense id
+            ServiceDictionary dictionary = new ServiceDictionary();
 
-        // taking a set for containing unique connections
-        // as we are parsing it from entire graph connection details
-        // where duplicate nodes exists
-        Set<String> allServices = new HashSet<>();
-        List<ConnectionDetails> allConnections = new ArrayList<>();
+            new ConnectionScanner(dictionary, (sourceId, destId, latency) -> {
+                ConnectionDetails connection = new ConnectionDetails(dictionary.nameOf(sourceId),
+                        dictionary.nameOf(destId), latency);
 
-        for (String conn : connections) {
-            ConnectionDetails connection = new ConnectionDetails();
-            connection.setSourceService(conn.substring(0, 1));
-            connection.setDestService(conn.substring(1, 2));
-            connection.setLatency(Integer.valueOf(conn.substring(2)));
+                allServices.add(connection.getSourceService());
+                allServices.add(connection.getDestService());
 
-            allServices.add(connection.getSourceService());
-            allServices.add(connection.getDestService());
+                allConnections.add(connection);
+            }).feed(input).endLine();
+            GraphMetrics.recordBytes(GraphMetrics.Operation.PARSE, input.length());
 
-            allConnections.add(connection);
+            return new AllConnections(allServices, allConnections, dictionary);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.PARSE, start);
         }
+    }
+
+    /**
+     * Validates and builds the service graph from one connection line in a single pass,
+     * straight into its CSR form without any intermediate connection objects.
+     */
+    public Graph parseServiceGraph(CharSequence input) {
+        long start = GraphMetrics.start();
+        try {
+            if(input == null) throw new InvalidConnectionException(1);
+
+            ServiceDictionary dictionary = new ServiceDictionary();
+            CompactGraph.Builder builder = new CompactGraph.Builder(dictionary);
+
+            new ConnectionScanner(dictionary, builder::addEdge).feed(input).endLine();
+            GraphMetrics.recordBytes(GraphMetrics.Operation.PARSE, input.length());
 
-        return new AllConnections(allServices, allConnections);
+            return new Graph(builder.build());
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.PARSE, start);
+        }
     }
 
     public boolean validateGraphNodesInput(String input) {
         if(input == null || input.isBlank()) return false;
-        // remove if any whitespace is exists in node connections
-        String[] connections = Arrays.stream(input.split(","))
-                .map(String::trim).toArray(String[]::new);
 
-        for (String conn: connections) {
-            boolean matched = conn.matches(VALID_GRAPH_CONN_REGEX_PATTERN);
-            if(!matched) return false;
+        try {
+            new ConnectionScanner(new ServiceDictionary(), (sourceId, destId, latency) -> {})
+                    .feed(input).endLine();
+        } catch (InvalidConnectionException ex) {
+            return false;
         }
         return true;
     }
 
     public Graph createServiceGraph(AllConnections connections) {
-        Graph serviceGraph = new Graph(new ArrayList<>(connections.services()));
-
-        for(ConnectionDetails connection: connections.allConnections()) {
-            serviceGraph.addAdjacentVertex(connection.getSourceService(), connection.getDestService(), connection.getLatency());
-        }
-
-        return serviceGraph;
-    }
-
-    public String getTotalAverageLatencyOfGivenTraces(Graph serviceGraph, String traces) {
-        // remove if any whitespace is exists in node connections
-        String[] allTraces = Arrays.stream(traces.split("-"))
-                .map(String::trim).toArray(String[]::new);
-
-        int totalAvgLatency = 0;
-
-        for (int nodeIdx = 1; nodeIdx < allTraces.length; nodeIdx++) {
-            int currentLatency = serviceGraph.getLatency(allTraces[nodeIdx - 1], allTraces[nodeIdx]);
+        long start = GraphMetrics.start();
+        try {
+            Graph serviceGraph = new Graph(new ArrayList<>(connections.services()), connections.dictionary());
 
-            // for any non-existing connection we have returned avg. latency as -1
-            if (currentLatency == -1) {
-                return "NO SUCH TRACE";
+            for(ConnectionDetails connection: connections.allConnections()) {
+                serviceGraph.addAdjacentVertex(connection.getSourceService(), connection.getDestService(), connection.getLatency());
             }
 
-            totalAvgLatency += currentLatency;
+            return serviceGraph;
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.BUILD_GRAPH, start);
         }
-        return String.valueOf(totalAvgLatency);
     }
 
-    public int findNoOfTracesWithGivenMaxKHops(Graph graph, String source, String destination, int maxHops) {
-        if(isInvalidServiceNodeInput(source, destination)) return -1;
-
-        List<String> currentPath = new ArrayList<>();
-
-        currentPath.add(source);
+    public String getTotalAverageLatencyOfGivenTraces(Graph serviceGraph, String traces) {
+        long start = GraphMetrics.start();
+        try {
+            CompactGraph graph = serviceGraph.compact();
 
-        // For getting the all the traces with given max. connection,
-        // we have taken depth-first-search approach using recursion
-        return findTracesWithMaxKHopsDFS(graph, source, destination, maxHops, 0, currentPath);
-    }
+            // remove if any whitespace is exists in node connections,
+            // services of a trace can be joined with '-' or '->'
+            String[] allTraces = Arrays.stream(traces.split("->?"))
+                    .map(String::trim).toArray(String[]::new);
 
-    private int findTracesWithMaxKHopsDFS(Graph graph, String node, String destNode, int maxHops,
-                                                 int currentTotalHops, List<String> paths) {
-        // base condition - if current hops count is > given max. hops then we need to return 0
-        // as we do not need to consider it
-        if(currentTotalHops > maxHops) return 0;
-
-        // here we need to check with extra currentTotalHops > 0 as
-        // when initiating recursion and if my source and destination node are same
-        // then from here method will return and hence can not calculate.
-        if(node.equals(destNode) && currentTotalHops > 0) {
-            return 1;
-        }
+            int totalAvgLatency = 0;
+            int previousNode = graph.serviceId(allTraces[0]);
 
-        int count = 0;
+            for (int nodeIdx = 1; nodeIdx < allTraces.length; nodeIdx++) {
+                int currentNode = graph.serviceId(allTraces[nodeIdx]);
+                int currentLatency = graph.latency(previousNode, currentNode);
 
-        // in each recursive call try to go depth of the node with their adjacency connections
-        Map<String, Integer> adjList = graph.getAdjacencyList().get(node);
-        if(adjList != null && adjList.size() > 0) {
-            for (Map.Entry<String, Integer> adjNode : adjList.entrySet()) {
-                String neighbour = adjNode.getKey();
-                paths.add(neighbour);
-                count += findTracesWithMaxKHopsDFS(graph, neighbour, destNode, maxHops, currentTotalHops + 1, paths);
+                // for any non-existing connection we have returned avg. latency as -1
+                if (currentLatency == -1) {
+                    return "NO SUCH TRACE";
+                }
 
-                // here for tracing all the path we are backtracking the list, hence remove the values after tracing it.
-                paths.remove(paths.size() - 1);
+                totalAvgLatency += currentLatency;
+                previousNode = currentNode;
             }
+            return String.valueOf(totalAvgLatency);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.TRACE_LATENCY, start);
         }
-
-        return count;
     }
 
-    public int findNoOfTracesEqualToGivenHops(Graph graph, String source, String destination, int hops) {
-        if(isInvalidServiceNodeInput(source, destination)) return -1;
-
-        List<String> currentPath = new ArrayList<>();
+    /**
+     * p50 and p99 latency estimates of the trace, e.g. "p50=12 p99=40". The latency sketches of its
+     * connections are convolved hop by hop; a connection without a sketch always takes its latency.
+     */
+    public String getLatencyPercentilesOfGivenTrace(Graph serviceGraph, String traces) {
+        long start = GraphMetrics.start();
+        try {
+            String[] allTraces = Arrays.stream(traces.split("->?"))
+                    .map(String::trim).toArray(String[]::new);
+
+            LatencySketch traceLatency = null;
+            for (int nodeIdx = 1; nodeIdx < allTraces.length; nodeIdx++) {
+                String previousNode = allTraces[nodeIdx - 1];
+                String currentNode = allTraces[nodeIdx];
+                int currentLatency = serviceGraph.getLatency(previousNode, currentNode);
+                if (currentLatency == -1) {
+                    return "NO SUCH TRACE";
+                }
 
-        currentPath.add(source);
+                LatencySketch hopLatency = serviceGraph.getLatencySketch(previousNode, currentNode);
+                if (hopLatency == null || hopLatency.count() == 0) hopLatency = LatencySketch.of(currentLatency);
+                traceLatency = traceLatency == null ? hopLatency : traceLatency.convolve(hopLatency);
+            }
 
-        return findTracesWithEqualToKHopsDFS(graph, source, destination, hops, 0, currentPath);
+            if (traceLatency == null) return "p50=0 p99=0";
+            return "p50=" + traceLatency.percentile(0.5) + " p99=" + traceLatency.percentile(0.99);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.TRACE_PERCENTILES, start);
+        }
     }
 
-    private int findTracesWithEqualToKHopsDFS(Graph graph, String node, String destNode, int hops,
-                                              int currentTotalHops, List<String> paths) {
-        // base condition - if current hops count is > given hops then we need to return 0
-        // as we do not need to consider it
-        if(currentTotalHops > hops) return 0;
-
-        // here we need to check with extra currentTotalHops > 0 as
-        // when initiating recursion and if my source and destination node are same
-        // then from here method will return and hence can not calculate.
-        if(node.equals(destNode) && currentTotalHops > 0 && currentTotalHops == hops)  {
-            return 1;
+    public long findNoOfTracesWithGivenMaxKHops(Graph graph, String source, String destination, int maxHops) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination)) return -1;
+
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return 0;
+
+            // instead of enumerating every trace by depth-first-search we count the traces hop by hop,
+            // which costs O(maxHops x connections) whatever the number of traces is
+            return HopTraceCounter.countWithMaxHops(compact, sourceId, destId, maxHops);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.MAX_HOPS, start);
         }
+    }
 
-        int count = 0;
-        // in each recursive call try to go depth of the node with their adjacency connections
-        Map<String, Integer> adjList = graph.getAdjacencyList().get(node);
-        if(adjList != null && adjList.size() > 0) {
-            for (Map.Entry<String, Integer> adjNode : adjList.entrySet()) {
-                String neighbour = adjNode.getKey();
-                paths.add(neighbour);
-                count += findTracesWithEqualToKHopsDFS(graph, neighbour, destNode, hops, currentTotalHops + 1, paths);
-
-                // here for tracing all the path we are backtracking the list,
-                // hence remove the values after tracing it.
-                paths.remove(paths.size() - 1);
-            }
+    /**
+     * The traces counted by {@link #findNoOfTracesWithGivenMaxKHops}, handed to the consumer as they
+     * are found and kept in the returned trie, at most maxTraces of them. The consumer may be null.
+     * There are none for invalid or unknown services.
+     */
+    public TraceTrie listTracesWithGivenMaxKHops(Graph graph, String source, String destination, int maxHops,
+                                                 int maxTraces, TraceEnumerator.TraceConsumer consumer) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination)) return TraceTrie.empty();
+
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return TraceTrie.empty();
+
+            return TraceEnumerator.withMaxHops(compact, sourceId, destId, maxHops, maxTraces, consumer);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.ENUMERATE_TRACES, start);
         }
-
-        return count;
     }
 
-    public int getShortestTraceByLatencyBetweenGivenNodes(Graph graph, String source, String destination) {
-        if(isInvalidServiceNodeInput(source, destination)) return -1;
+    public long findNoOfTracesEqualToGivenHops(Graph graph, String source, String destination, int hops) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination)) return -1;
 
-        int length = graph.getAdjacencyList().size();
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return 0;
 
-        int[] shortestLatencyArr = new int[length];
+            return HopTraceCounter.countWithExactHops(compact, sourceId, destId, hops);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.EXACT_HOPS, start);
+        }
+    }
 
-        // here we need to assign the arr with MAX_VALUE as we need to compare and store the min. value in this array
-        shortestLatencyArr = Arrays.stream(shortestLatencyArr).map(x -> Integer.MAX_VALUE).toArray();
-        shortestLatencyArr[0] = 0;
+    // the traces counted by findNoOfTracesEqualToGivenHops, see listTracesWithGivenMaxKHops
+    public TraceTrie listTracesEqualToGivenHops(Graph graph, String source, String destination, int hops,
+                                                int maxTraces, TraceEnumerator.TraceConsumer consumer) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination)) return TraceTrie.empty();
+
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return TraceTrie.empty();
+
+            return TraceEnumerator.withExactHops(compact, sourceId, destId, hops, maxTraces, consumer);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.ENUMERATE_TRACES, start);
+        }
+    }
 
-        // here we need to think it by greedy way, mns we are always try to go with min weight
-        // instead of calculate all the connection with greater latency to make the code more performant
-        // and for this a good data structure is a min heap to store adjacent nodes with its weight instead of queue
-        PriorityQueue<ConnectionPair> minLatencyHeap = new PriorityQueue<>(Comparator.comparingInt(ConnectionPair::latency));
+    /**
+     * Number of traces with exactly the given hops between all pairs of services, for hop counts
+     * too large for a per-query sweep. Counts saturate at Long.MAX_VALUE.
+     */
+    public TraceCountMatrix getAllPairsTracesEqualToGivenHops(Graph graph, int hops) {
+        return TraceCountMatrix.exactHops(graph.compact(), hops, ForkJoinPool.commonPool());
+    }
 
-        minLatencyHeap.add(new ConnectionPair(source, 0));
+    // same as above with the counts kept modulo the given prime (below 2^31)
+    public TraceCountMatrix getAllPairsTracesEqualToGivenHops(Graph graph, int hops, long modulus) {
+        return TraceCountMatrix.exactHops(graph.compact(), hops, modulus, ForkJoinPool.commonPool());
+    }
 
-        while(!minLatencyHeap.isEmpty()) {
-            ConnectionPair nodePair = minLatencyHeap.poll();
-            int currentLatency = nodePair.latency();
+    // number of traces with 1..maxHops hops between all pairs of services, saturating at Long.MAX_VALUE
+    public TraceCountMatrix getAllPairsTracesWithGivenMaxKHops(Graph graph, int maxHops) {
+        return TraceCountMatrix.maxHops(graph.compact(), maxHops, ForkJoinPool.commonPool());
+    }
 
-            Map<String, Integer> adjacencyList = graph.getAdjacencyList().get(nodePair.serviceNode());
-            if (adjacencyList != null && adjacencyList.size() > 0) {
-                for (Map.Entry<String, Integer> adjNode : adjacencyList.entrySet()) {
-                    int shortestArrIdx = adjNode.getKey().charAt(0) - 'A';
+    // same as above with the counts kept modulo the given prime (below 2^31)
+    public TraceCountMatrix getAllPairsTracesWithGivenMaxKHops(Graph graph, int maxHops, long modulus) {
+        return TraceCountMatrix.maxHops(graph.compact(), maxHops, modulus, ForkJoinPool.commonPool());
+    }
 
-                    // here we are checking that if the current calculated latency if less than
-                    // existing value in the shortest array then we need to store it
-                    // as we are finding the shortest connection in terms of latency
-                    if (currentLatency + adjNode.getValue() < shortestLatencyArr[shortestArrIdx]) {
-                        shortestLatencyArr[shortestArrIdx] = currentLatency + adjNode.getValue();
-                        minLatencyHeap.add(new ConnectionPair(adjNode.getKey(), shortestLatencyArr[shortestArrIdx]));
-                    }
-                }
-            }
+    public int getShortestTraceByLatencyBetweenGivenNodes(Graph graph, String source, String destination) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination)) return -1;
+
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return -1;
+
+            // served from the all-pairs index when one has been built for this graph
+            ShortestLatencyIndex index = compact.shortestLatencyIndex();
+            if(index != null) return index.latency(sourceId, destId);
+
+            // here we need to think it by greedy way, mns we are always try to go with min latency,
+            // searching from both ends until the two searches prove they met on the shortest trace
+            return ShortestTraceSearch.forCurrentThread().shortestTrace(compact, sourceId, destId);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.SHORTEST_TRACE, start);
         }
-
-        return shortestLatencyArr[destination.charAt(0) - 'A'];
     }
 
-    public int getPossibleTracesLessThanGivenLatency(Graph graph, String source, String destination, int latencyLimit) {
-        if(isInvalidServiceNodeInput(source, destination) || latencyLimit < 0) return -1;
+    /**
+     * The simple traces (no service passed twice) from source to destination in increasing order of
+     * latency, with their services, e.g. to rank failover routes. Each trace is only computed when
+     * the iterator is pulled for it. There are none from a service to itself or for unknown services.
+     */
+    public Iterator<TracePath> getShortestTracesByLatency(Graph graph, String source, String destination) {
+        if(isInvalidServiceNodeInput(source, destination)) return Collections.emptyIterator();
 
-        List<String> currentPath = new ArrayList<>();
+        CompactGraph compact = graph.compact();
+        int sourceId = compact.serviceId(source);
+        int destId = compact.serviceId(destination);
+        if(sourceId < 0 || destId < 0) return Collections.emptyIterator();
 
-        currentPath.add(source);
+        return new KShortestTraces(compact, sourceId, destId);
+    }
 
-        return getAllTracesWithinGivenLatencyByDFS(graph, source, destination, latencyLimit,0, currentPath);
+    /**
+     * Precomputes the shortest traces between all pairs of services of the graph, so later shortest trace
+     * queries are a single lookup. Returns false, and queries keep searching on demand, when the index
+     * would need more memory than the given budget. The index is dropped with any change to the graph.
+     */
+    public boolean buildShortestLatencyIndex(Graph graph, long memoryBudgetBytes) {
+        CompactGraph compact = graph.compact();
+        ShortestLatencyIndex index = ShortestLatencyIndexBuilder.build(compact, memoryBudgetBytes, ForkJoinPool.commonPool());
+        compact.attachShortestLatencyIndex(index);
+        return index != null;
     }
 
-    private int getAllTracesWithinGivenLatencyByDFS(Graph graph, String node, String destination, int latencyLimit,
-                                   int currentLatency, List<String> traces) {
-        int count = 0;
-
-        // base condition - if current hops count is > given hops then we need to return
-        // already calculated count as we do not need to consider it
-        if(currentLatency >= latencyLimit) return count;
-
-        // here we need to check with extra currentLatency > 0 as
-        // when initiating recursion and if my source and destination node are same
-        // then from here method will return and hence can not calculate.
-        if(node.equals(destination) && currentLatency > 0) {
-            // from here we do not want to return as if also we found the destination connection
-            // because we have circular connections so, we can go round and round
-            // until reach the given max. latency
-            count++;
-        }
+    /**
+     * Precomputes the latencies from and to the given number of landmark services, so later shortest
+     * trace queries on this graph are guided towards the destination and settle fewer services. Costs
+     * two searches and 8 bytes per service per landmark; the index is dropped with any change to the graph.
+     */
+    public void buildLandmarkIndex(Graph graph, int landmarkCount) {
+        CompactGraph compact = graph.compact();
+        compact.attachLandmarkIndex(LandmarkIndexBuilder.build(compact, landmarkCount));
+    }
 
-        // in each recursive call try to go depth of the node with their adjacency connections
-        Map<String, Integer> adjList = graph.getAdjacencyList().get(node);
-        if (adjList != null && adjList.size() > 0) {
-            for (Map.Entry<String, Integer> adjNode : adjList.entrySet()) {
-                String neighbour = adjNode.getKey();
-                Integer neighbourLatency = adjNode.getValue();
-                traces.add(neighbour);
-                count += getAllTracesWithinGivenLatencyByDFS(graph, neighbour, destination, latencyLimit,
-                        currentLatency + neighbourLatency, traces);
-
-                // here for tracing all the path we are backtracking the list,
-                // hence remove the values after tracing it.
-                traces.remove(traces.size() - 1);
-            }
+    public long getPossibleTracesLessThanGivenLatency(Graph graph, String source, String destination, int latencyLimit) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination) || latencyLimit < 0) return -1;
+
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return 0;
+
+            // traces can go round and round the cycles until the limit is reached, so instead of enumerating them
+            // we count the traces reaching every service for each latency below the limit
+            return LatencyTraceCounter.count(compact, sourceId, destId, latencyLimit);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.WITHIN_LATENCY, start);
         }
+    }
 
-        return count;
+    // the traces counted by getPossibleTracesLessThanGivenLatency, see listTracesWithGivenMaxKHops
+    public TraceTrie listTracesLessThanGivenLatency(Graph graph, String source, String destination, int latencyLimit,
+                                                    int maxTraces, TraceEnumerator.TraceConsumer consumer) {
+        long start = GraphMetrics.start();
+        try {
+            if(isInvalidServiceNodeInput(source, destination)) return TraceTrie.empty();
+
+            CompactGraph compact = graph.compact();
+            int sourceId = compact.serviceId(source);
+            int destId = compact.serviceId(destination);
+            if(sourceId < 0 || destId < 0) return TraceTrie.empty();
+
+            return TraceEnumerator.withinLatency(compact, sourceId, destId, latencyLimit, maxTraces, consumer);
+        } finally {
+            GraphMetrics.recordCall(GraphMetrics.Operation.ENUMERATE_TRACES, start);
+        }
     }
 
     private boolean isInvalidServiceNodeInput(String source, String destination) {
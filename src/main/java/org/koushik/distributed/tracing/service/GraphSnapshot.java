@@ -0,0 +1,299 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.HelperUtil;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of a built graph, so a topology is parsed once and loaded in milliseconds after.
+ * <p>
+ * Layout, all little-endian:
+ * <pre>
+ * int    magic 'DTGS', int format version
+ * int    service count n, int connection count m
+ * int[]  offsets (n + 1), targets (m), latencies (m)   - the CSR arrays, 4-byte aligned
+ * n x    (int byte length, UTF-8 name)                 - the service dictionary in id order
+ * int    CRC32C of everything before it
+ * </pre>
+ * Loading memory-maps the file window by window, so snapshots larger than 2 GB load as well,
+ * verifies the checksum and copies the CSR arrays out with bulk {@link IntBuffer} gets, which run
+ * at memory bandwidth. Latency sketches are not part of a snapshot.
+ */
+public final class GraphSnapshot {
+    public static final String FILE_EXTENSION = HelperUtil.SNAPSHOT_FILE_EXTENSION;
+    public static final int FORMAT_VERSION = 1;
+    // files are mapped window by window, a single mapping cannot go past 2 GB
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    // "DTGS" in file byte order
+    private static final int MAGIC = 'D' | 'T' << 8 | 'G' << 16 | 'S' << 24;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private GraphSnapshot() {
+    }
+
+    public static void write(CompactGraph graph, Path file) throws IOException {
+        try (Writer writer = new Writer(file, graph.nodeCount(), graph.edgeCount())) {
+            writer.putInts(graph.offsets(), 0, graph.nodeCount() + 1);
+            writer.putInts(graph.targets(), 0, graph.edgeCount());
+            writer.putInts(graph.latencies(), 0, graph.edgeCount());
+
+            ServiceDictionary services = graph.services();
+            for(int id = 0; id < graph.nodeCount(); id++) {
+                writer.putServiceName(services.nameOf(id));
+            }
+            writer.finish();
+        }
+    }
+
+    public static CompactGraph read(Path file) throws IOException {
+        return read(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    // reads through mapped windows of the given size, any size works but small ones only suit tests
+    public static CompactGraph read(Path file, int windowSize) throws IOException {
+        if(windowSize < Integer.BYTES) throw new IllegalArgumentException("Window size must be at least " + Integer.BYTES);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if(fileSize < HEADER_BYTES + Integer.BYTES * 2L) throw corrupt(file, "too short");
+            long bodySize = fileSize - Integer.BYTES;
+            MappedInput input = new MappedInput(channel, windowSize);
+
+            if(input.getInt() != MAGIC) throw corrupt(file, "not a graph snapshot");
+            int version = input.getInt();
+            if(version != FORMAT_VERSION) throw corrupt(file, "unsupported format version " + version);
+
+            // the checksum goes over the whole body first, so nothing is built from a damaged file
+            CRC32C crc = new CRC32C();
+            for(long position = 0; position < bodySize; position += windowSize) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, bodySize - position)));
+            }
+            MappedInput trailer = new MappedInput(channel, windowSize);
+            trailer.seek(bodySize);
+            if((int) crc.getValue() != trailer.getInt()) throw corrupt(file, "checksum mismatch");
+
+            int nodeCount = input.getInt();
+            int edgeCount = input.getInt();
+            long arraysEnd = HEADER_BYTES + ((long) nodeCount + 1 + 2L * edgeCount) * Integer.BYTES;
+            if(nodeCount < 0 || edgeCount < 0 || arraysEnd > bodySize) throw corrupt(file, "bad header");
+
+            int[] offsets = new int[nodeCount + 1];
+            int[] targets = new int[edgeCount];
+            int[] latencies = new int[edgeCount];
+            input.getInts(offsets);
+            input.getInts(targets);
+            input.getInts(latencies);
+
+            ServiceDictionary services = new ServiceDictionary();
+            for(int id = 0; id < nodeCount; id++) {
+                if(input.position() + Integer.BYTES > bodySize) throw corrupt(file, "truncated service names");
+                int length = input.getInt();
+                if(length < 0 || input.position() + length > bodySize) throw corrupt(file, "truncated service names");
+
+                byte[] name = new byte[length];
+                input.getBytes(name);
+                String service = new String(name, StandardCharsets.UTF_8);
+                if(!isServiceName(service)) throw corrupt(file, "invalid service name " + service);
+                if(services.intern(service) != id) throw corrupt(file, "duplicate service name");
+            }
+            if(input.position() != bodySize) throw corrupt(file, "unexpected trailing bytes");
+
+            try {
+                return CompactGraph.of(services, offsets, targets, latencies);
+            } catch (IllegalArgumentException ex) {
+                throw corrupt(file, ex.getMessage());
+            }
+        }
+    }
+
+    // true when the file starts like a snapshot, so callers can tell it from a text topology
+    public static boolean isSnapshot(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while(magic.hasRemaining() && channel.read(magic) > 0) {
+                // keep reading until the magic number is complete or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    // the names the text parser accepts, anything else could not be queried
+    private static boolean isServiceName(String service) {
+        if(service.isEmpty()) return false;
+        for(int i = 0; i < service.length(); i++) {
+            if(!ConnectionScanner.isNameChar(service.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static IOException corrupt(Path file, String reason) {
+        return new IOException("Invalid graph snapshot " + file + ": " + reason);
+    }
+
+    // sequential little-endian reads over a file mapped one window at a time, values may straddle windows
+    private static final class MappedInput {
+        private final FileChannel channel;
+        private final long fileSize;
+        private final int windowSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedInput(FileChannel channel, int windowSize) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            this.windowSize = windowSize;
+            map(0);
+        }
+
+        long position() {
+            return windowStart + window.position();
+        }
+
+        void seek(long position) throws IOException {
+            map(position);
+        }
+
+        int getInt() throws IOException {
+            if(window.remaining() < Integer.BYTES) map(position());
+            if(window.remaining() < Integer.BYTES) throw new EOFException("Snapshot ends inside a value");
+            return window.getInt();
+        }
+
+        void getInts(int[] values) throws IOException {
+            int from = 0;
+            while(from < values.length) {
+                if(window.remaining() < Integer.BYTES) map(position());
+                if(window.remaining() < Integer.BYTES) throw new EOFException("Snapshot ends inside the arrays");
+                int chunk = Math.min(values.length - from, window.remaining() / Integer.BYTES);
+                // bulk get through an int view, the position of the byte buffer is moved by hand
+                window.asIntBuffer().get(values, from, chunk);
+                window.position(window.position() + chunk * Integer.BYTES);
+                from += chunk;
+            }
+        }
+
+        void getBytes(byte[] bytes) throws IOException {
+            int from = 0;
+            while(from < bytes.length) {
+                if(!window.hasRemaining()) map(position());
+                if(!window.hasRemaining()) throw new EOFException("Snapshot ends inside a service name");
+                int chunk = Math.min(bytes.length - from, window.remaining());
+                window.get(bytes, from, chunk);
+                from += chunk;
+            }
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, fileSize - position));
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Streaming snapshot writer for graphs that are never held in memory as a whole, e.g. generated
+     * ones. After the header it expects exactly the offsets, targets and latencies in that order,
+     * then every service name in id order, then {@link #finish()}; anything else fails with an
+     * IllegalStateException rather than producing a file that cannot be read back.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private long intsLeft;
+        private int namesLeft;
+
+        public Writer(Path file, int nodeCount, int edgeCount) throws IOException {
+            if(nodeCount < 0 || edgeCount < 0) throw new IllegalArgumentException("Negative service or connection count");
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.intsLeft = nodeCount + 1 + 2L * edgeCount;
+            this.namesLeft = nodeCount;
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(nodeCount);
+            buffer.putInt(edgeCount);
+        }
+
+        // next value of the offsets, targets and latencies arrays
+        public void putInt(int value) throws IOException {
+            reserveInts(1);
+            if(buffer.remaining() < Integer.BYTES) flush();
+            buffer.putInt(value);
+        }
+
+        public void putInts(int[] values, int from, int count) throws IOException {
+            reserveInts(count);
+            int end = from + count;
+            while(from < end) {
+                if(buffer.remaining() < Integer.BYTES) flush();
+                int chunk = Math.min(end - from, buffer.remaining() / Integer.BYTES);
+                // bulk put through an int view, the position of the byte buffer is moved by hand
+                buffer.asIntBuffer().put(values, from, chunk);
+                buffer.position(buffer.position() + chunk * Integer.BYTES);
+                from += chunk;
+            }
+        }
+
+        public void putServiceName(String name) throws IOException {
+            if(intsLeft != 0 || namesLeft == 0) throw new IllegalStateException("Service name out of order");
+            namesLeft--;
+
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if(buffer.remaining() < Integer.BYTES) flush();
+            buffer.putInt(bytes.length);
+            int from = 0;
+            while(from < bytes.length) {
+                if(!buffer.hasRemaining()) flush();
+                int chunk = Math.min(bytes.length - from, buffer.remaining());
+                buffer.put(bytes, from, chunk);
+                from += chunk;
+            }
+        }
+
+        // writes the checksum trailer, the snapshot is complete after this
+        public void finish() throws IOException {
+            if(intsLeft != 0 || namesLeft != 0) throw new IllegalStateException("Snapshot is incomplete");
+
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while(buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void reserveInts(int count) {
+            if(count > intsLeft) throw new IllegalStateException("More array values than the header announced");
+            intsLeft -= count;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while(buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * Counts hop-bounded traces by layered dynamic programming instead of enumerating every walk.
+ * <p>
+ * Layer {@code h} holds, for every service, the number of traces from the source reaching it with
+ * exactly {@code h} hops; the next layer is one pass over the edges, so a query costs
+ * O(hops x edges) time and O(services) memory. Counts saturate at {@link Long#MAX_VALUE}
+ * instead of overflowing.
+ */
+public final class HopTraceCounter {
+
+    private HopTraceCounter() {
+    }
+
+    /**
+     * Number of traces from source to destination with 1..maxHops hops. A trace ends the first
+     * time it reaches the destination, it is not extended through it.
+     */
+    public static long countWithMaxHops(CompactGraph graph, int source, int destination, int maxHops) {
+        return countWithMaxHops(graph, source, destination, new int[] {maxHops})[0];
+    }
+
+    // answers several max-hop limits for the same source and destination with one sweep up to the largest
+    public static long[] countWithMaxHops(CompactGraph graph, int source, int destination, int[] maxHops) {
+        int sweepHops = 0;
+        for(int hops: maxHops) sweepHops = Math.max(sweepHops, hops);
+
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        long[] current = new long[graph.nodeCount()];
+        long[] next = new long[graph.nodeCount()];
+        current[source] = 1;
+        long[] counts = new long[maxHops.length];
+        long expanded = 0, relaxed = 0;
+        int depth = 0;
+
+        for(int hop = 1; hop <= sweepHops; hop++) {
+            long hopWork = advance(offsets, targets, current, next);
+            if(hopWork == 0) break;
+            expanded += hopWork >>> 32;
+            relaxed += hopWork & 0xFFFFFFFFL;
+            depth = hop;
+
+            for(int query = 0; query < maxHops.length; query++) {
+                if(hop <= maxHops[query]) counts[query] = saturatedAdd(counts[query], next[destination]);
+            }
+            // the destination absorbs the traces arriving at it
+            next[destination] = 0;
+
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        GraphMetrics.recordWork(GraphMetrics.Operation.MAX_HOPS, expanded, relaxed, 0, depth);
+        return counts;
+    }
+
+    // number of traces from source to destination with exactly the given hops
+    public static long countWithExactHops(CompactGraph graph, int source, int destination, int hops) {
+        return countWithExactHops(graph, source, new int[] {destination}, new int[] {hops})[0];
+    }
+
+    // answers several (destination, hops) queries from the same source with one sweep up to the largest hops
+    public static long[] countWithExactHops(CompactGraph graph, int source, int[] destinations, int[] hops) {
+        if(destinations.length != hops.length)
+            throw new IllegalArgumentException("Every destination needs a hop count");
+
+        int sweepHops = 0;
+        for(int hop: hops) sweepHops = Math.max(sweepHops, hop);
+
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        long[] current = new long[graph.nodeCount()];
+        long[] next = new long[graph.nodeCount()];
+        current[source] = 1;
+        long[] counts = new long[destinations.length];
+        long expanded = 0, relaxed = 0;
+        int depth = 0;
+
+        for(int hop = 1; hop <= sweepHops; hop++) {
+            long hopWork = advance(offsets, targets, current, next);
+            if(hopWork == 0) break;
+            expanded += hopWork >>> 32;
+            relaxed += hopWork & 0xFFFFFFFFL;
+            depth = hop;
+
+            for(int query = 0; query < destinations.length; query++) {
+                if(hop == hops[query]) counts[query] = next[destinations[query]];
+            }
+
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        GraphMetrics.recordWork(GraphMetrics.Operation.EXACT_HOPS, expanded, relaxed, 0, depth);
+        return counts;
+    }
+
+    /**
+     * Number of traces from the source with exactly the given hops to every service, indexed by
+     * service id. Traces may pass through any service, the source included, on the way.
+     */
+    public static long[] countsWithExactHops(CompactGraph graph, int source, int hops) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        long[] current = new long[graph.nodeCount()];
+        long[] next = new long[graph.nodeCount()];
+        current[source] = 1;
+        long expanded = 0, relaxed = 0;
+
+        for(int hop = 1; hop <= hops; hop++) {
+            long hopWork = advance(offsets, targets, current, next);
+            if(hopWork == 0) {
+                GraphMetrics.recordWork(GraphMetrics.Operation.EXACT_HOPS, expanded, relaxed, 0, hop - 1);
+                return next;
+            }
+            expanded += hopWork >>> 32;
+            relaxed += hopWork & 0xFFFFFFFFL;
+
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        GraphMetrics.recordWork(GraphMetrics.Operation.EXACT_HOPS, expanded, relaxed, 0, hops);
+        return current;
+    }
+
+    /**
+     * Pushes one hop from current into next. Returns the work done as (services expanded << 32 |
+     * connections relaxed), which fits as a hop relaxes every connection at most once, and 0 once no
+     * trace can be extended anymore.
+     */
+    static long advance(int[] offsets, int[] targets, long[] current, long[] next) {
+        Arrays.fill(next, 0);
+        long expanded = 0;
+        long relaxed = 0;
+
+        for(int node = 0; node < current.length; node++) {
+            long traces = current[node];
+            if(traces == 0) continue;
+
+            expanded++;
+            relaxed += offsets[node + 1] - offsets[node];
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int target = targets[edge];
+                next[target] = saturatedAdd(next[target], traces);
+            }
+        }
+        return expanded << 32 | relaxed;
+    }
+
+    static long saturatedAdd(long left, long right) {
+        long sum = left + right;
+        // both operands are never negative, so an overflow always wraps below zero
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
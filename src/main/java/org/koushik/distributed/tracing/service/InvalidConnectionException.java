@@ -0,0 +1,31 @@
+package org.koushik.distributed.tracing.service;
+
+/**
+ * Thrown when a connection line can not be parsed. The column is 1-based and points at the
+ * first character of the offending connection token.
+ */
+public class InvalidConnectionException extends IllegalArgumentException {
+    private final long line;
+    private final long column;
+
+    public InvalidConnectionException(long column) {
+        super("Bad Input value(s)! Invalid connection at column " + column);
+        this.line = 0;
+        this.column = column;
+    }
+
+    public InvalidConnectionException(long line, long column) {
+        super("Bad Input value(s)! Invalid connection at line " + line + ", column " + column);
+        this.line = line;
+        this.column = column;
+    }
+
+    // 1-based line of the input file, 0 when a single line was parsed
+    public long getLine() {
+        return line;
+    }
+
+    public long getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,259 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.IndexedMinHeap;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.TracePath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Lazily enumerates the simple traces (no service passed twice) from a source to a destination in
+ * increasing order of latency, with Yen's algorithm.
+ * <p>
+ * Every next trace deviates from an earlier one: for a service of the previous trace (the spur),
+ * the prefix up to it (the root) is kept, the other root services and the connections out of the
+ * spur taken by earlier traces with the same root are banned, and the cheapest way on from the
+ * spur is searched. These deviations are the candidates, the cheapest one is the next trace. As
+ * in Lawler's variant a trace only deviates from its own deviation point on. Nothing is computed
+ * before a trace is pulled, so a caller that stops early only pays for the traces it took.
+ * <p>
+ * Spur searches are A* searches guided by the exact latency from every service to the destination
+ * in the full graph, found once with a search over the reversed graph. Bans only remove
+ * connections, so these stay lower bounds and the searches head almost straight for the
+ * destination. Distances, parents and bans live in primitive arrays stamped with a per-search
+ * generation, so they are reused between spur searches without being cleared.
+ */
+public final class KShortestTraces implements Iterator<TracePath> {
+    private static final int NO_TRACE = ShortestTraceSearch.NO_TRACE;
+
+    private final CompactGraph graph;
+    private final int source;
+    private final int destination;
+
+    // traces handed out so far, in order, and the deviations not handed out yet
+    private final List<Candidate> found = new ArrayList<>();
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    private final Set<Candidate> seen = new HashSet<>();
+    private Candidate next;
+    private boolean exhausted;
+
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    // latency from every service to the destination in the full graph, NO_TRACE when unreachable
+    private int[] remaining;
+    private int[] distances;
+    private int[] parents;
+    // distances and parents are only valid, and bans only hold, when stamped with the current generation
+    private int[] stamps;
+    private int[] bannedNodes;
+    private int[] bannedTargets;
+    private int generation;
+
+    // work done for the trace being computed, recorded once it is found
+    private long expanded;
+    private long relaxed;
+    private long pushes;
+
+    public KShortestTraces(CompactGraph graph, int source, int destination) {
+        if(source < 0 || source >= graph.nodeCount() || destination < 0 || destination >= graph.nodeCount())
+            throw new IllegalArgumentException("Unknown service id");
+
+        this.graph = graph;
+        this.source = source;
+        this.destination = destination;
+        // a simple trace cannot come back to where it started
+        this.exhausted = source == destination;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(next == null && !exhausted) {
+            long start = GraphMetrics.start();
+            expanded = relaxed = pushes = 0;
+
+            if(found.isEmpty()) {
+                prepare();
+                searchFromSource();
+            } else {
+                deviate(found.get(found.size() - 1));
+            }
+            next = candidates.poll();
+            exhausted = next == null;
+
+            GraphMetrics.recordWork(GraphMetrics.Operation.K_SHORTEST_TRACES, expanded, relaxed, pushes, found.size() + 1);
+            GraphMetrics.recordCall(GraphMetrics.Operation.K_SHORTEST_TRACES, start);
+        }
+        return next != null;
+    }
+
+    @Override
+    public TracePath next() {
+        if(!hasNext()) throw new NoSuchElementException();
+
+        Candidate trace = next;
+        next = null;
+        found.add(trace);
+
+        List<String> services = new ArrayList<>(trace.nodes.length);
+        for(int node: trace.nodes) services.add(graph.services().nameOf(node));
+        return new TracePath(trace.latency, services);
+    }
+
+    private void prepare() {
+        int nodeCount = graph.nodeCount();
+        remaining = new int[nodeCount];
+        distances = new int[nodeCount];
+        parents = new int[nodeCount];
+        stamps = new int[nodeCount];
+        bannedNodes = new int[nodeCount];
+        bannedTargets = new int[nodeCount];
+        heap.ensureCapacity(nodeCount);
+
+        // plain Dijkstra from the destination over the reversed connections
+        CompactGraph reverse = graph.reverse();
+        int[] offsets = reverse.offsets();
+        int[] targets = reverse.targets();
+        int[] latencies = reverse.latencies();
+        Arrays.fill(remaining, NO_TRACE);
+        remaining[destination] = 0;
+        heap.offer(destination, 0);
+
+        while(!heap.isEmpty()) {
+            int latency = heap.minKey();
+            int node = heap.poll();
+            expanded++;
+
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                relaxed++;
+                long caller = (long) latency + latencies[edge];
+                if(caller < remaining[targets[edge]]) {
+                    remaining[targets[edge]] = (int) caller;
+                    heap.offer(targets[edge], (int) caller);
+                    pushes++;
+                }
+            }
+        }
+    }
+
+    private void searchFromSource() {
+        if(remaining[source] == NO_TRACE) return;
+
+        nextGeneration();
+        int latency = spurSearch(source);
+        if(latency != NO_TRACE) addCandidate(new int[0], 0, 0, latency);
+    }
+
+    private void deviate(Candidate previous) {
+        int[] nodes = previous.nodes;
+        int rootLatency = 0;
+        for(int i = 0; i < previous.deviation; i++) rootLatency += graph.latency(nodes[i], nodes[i + 1]);
+
+        for(int spurIdx = previous.deviation; spurIdx < nodes.length - 1; spurIdx++) {
+            int spur = nodes[spurIdx];
+            nextGeneration();
+
+            for(int rootIdx = 0; rootIdx < spurIdx; rootIdx++) bannedNodes[nodes[rootIdx]] = generation;
+            for(Candidate trace: found) {
+                if(trace.nodes.length > spurIdx + 1 && Arrays.equals(trace.nodes, 0, spurIdx + 1, nodes, 0, spurIdx + 1)) {
+                    bannedTargets[trace.nodes[spurIdx + 1]] = generation;
+                }
+            }
+
+            int spurLatency = spurSearch(spur);
+            if(spurLatency != NO_TRACE) addCandidate(Arrays.copyOf(nodes, spurIdx), spurIdx, rootLatency, spurLatency);
+
+            rootLatency += graph.latency(spur, nodes[spurIdx + 1]);
+        }
+    }
+
+    // A* search from the spur to the destination around the bans, returns its latency or NO_TRACE
+    private int spurSearch(int spur) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+
+        distances[spur] = 0;
+        parents[spur] = -1;
+        stamps[spur] = generation;
+        heap.offer(spur, remaining[spur]);
+        pushes++;
+
+        while(!heap.isEmpty()) {
+            int node = heap.poll();
+            if(node == destination) {
+                heap.clear();
+                return distances[destination];
+            }
+            expanded++;
+
+            int latency = distances[node];
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int target = targets[edge];
+                if(bannedNodes[target] == generation || remaining[target] == NO_TRACE) continue;
+                if(node == spur && bannedTargets[target] == generation) continue;
+
+                relaxed++;
+                long distance = (long) latency + latencies[edge];
+                if(stamps[target] != generation || distance < distances[target]) {
+                    distances[target] = (int) distance;
+                    parents[target] = node;
+                    stamps[target] = generation;
+                    heap.offer(target, (int) Math.min(NO_TRACE, distance + remaining[target]));
+                    pushes++;
+                }
+            }
+        }
+        return NO_TRACE;
+    }
+
+    // root services followed by the spur search's trace from the spur to the destination
+    private void addCandidate(int[] root, int deviation, int rootLatency, int spurLatency) {
+        int spurHops = 0;
+        for(int node = destination; parents[node] >= 0; node = parents[node]) spurHops++;
+
+        int[] nodes = Arrays.copyOf(root, root.length + spurHops + 1);
+        for(int node = destination, idx = nodes.length - 1; node >= 0; node = parents[node], idx--) {
+            nodes[idx] = node;
+        }
+
+        Candidate candidate = new Candidate(nodes, rootLatency + spurLatency, deviation);
+        if(seen.add(candidate)) candidates.add(candidate);
+    }
+
+    private void nextGeneration() {
+        if(++generation == 0) {
+            // the stamps wrapped around, old stamps could look current again
+            Arrays.fill(stamps, 0);
+            Arrays.fill(bannedNodes, 0);
+            Arrays.fill(bannedTargets, 0);
+            generation = 1;
+        }
+    }
+
+    // ordered by latency, then hops, then service ids, so equal latencies come out in a stable order
+    private record Candidate(int[] nodes, int latency, int deviation) implements Comparable<Candidate> {
+
+        @Override
+        public int compareTo(Candidate other) {
+            if(latency != other.latency) return Integer.compare(latency, other.latency);
+            if(nodes.length != other.nodes.length) return Integer.compare(nodes.length, other.nodes.length);
+            return Arrays.compare(nodes, other.nodes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Candidate candidate && Arrays.equals(nodes, candidate.nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
+        }
+    }
+}
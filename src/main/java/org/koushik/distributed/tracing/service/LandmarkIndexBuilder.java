@@ -0,0 +1,101 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.IndexedMinHeap;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.LandmarkIndex;
+
+import java.util.Arrays;
+
+/**
+ * Builds the {@link LandmarkIndex} of a graph snapshot: two Dijkstra searches per landmark, one
+ * over the connections and one over the reversed graph.
+ * <p>
+ * Landmarks are picked farthest first: the next landmark is the service farthest, there and back,
+ * from the landmarks picked so far, starting from the one farthest from service 0. Landmarks at
+ * the edges of the graph, behind the services queried, give the tightest bounds; a service no
+ * landmark reaches counts as the farthest, so disconnected parts get a landmark of their own.
+ */
+public final class LandmarkIndexBuilder {
+    private static final int NO_TRACE = LandmarkIndex.NO_TRACE;
+
+    private LandmarkIndexBuilder() {
+    }
+
+    // picks at most the given number of landmarks, never more than the graph has services
+    public static LandmarkIndex build(CompactGraph graph, int landmarkCount) {
+        if(landmarkCount < 1) throw new IllegalArgumentException("Landmark count must be positive: " + landmarkCount);
+
+        int nodeCount = graph.nodeCount();
+        landmarkCount = Math.min(landmarkCount, nodeCount);
+        if(landmarkCount == 0) return null;
+
+        CompactGraph reverse = graph.reverse();
+        IndexedMinHeap heap = new IndexedMinHeap();
+        heap.ensureCapacity(nodeCount);
+        int[] from = new int[nodeCount];
+        int[] to = new int[nodeCount];
+
+        int[] landmarks = new int[landmarkCount];
+        int[] fromLandmarks = new int[nodeCount * landmarkCount];
+        int[] toLandmarks = new int[nodeCount * landmarkCount];
+        // there-and-back latency to the nearest landmark so far, Long.MAX_VALUE when none reaches the service
+        long[] nearest = new long[nodeCount];
+        Arrays.fill(nearest, Long.MAX_VALUE);
+
+        distances(graph, 0, from, heap);
+        distances(reverse, 0, to, heap);
+        long[] fromStart = new long[nodeCount];
+        for(int node = 0; node < nodeCount; node++) fromStart[node] = roundTrip(from[node], to[node]);
+
+        for(int landmarkIdx = 0; landmarkIdx < landmarkCount; landmarkIdx++) {
+            int landmark = farthest(landmarkIdx == 0 ? fromStart : nearest);
+            landmarks[landmarkIdx] = landmark;
+
+            distances(graph, landmark, from, heap);
+            distances(reverse, landmark, to, heap);
+            for(int node = 0; node < nodeCount; node++) {
+                fromLandmarks[node * landmarkCount + landmarkIdx] = from[node];
+                toLandmarks[node * landmarkCount + landmarkIdx] = to[node];
+                nearest[node] = Math.min(nearest[node], roundTrip(from[node], to[node]));
+            }
+            // a landmark is never picked twice, even when it is cut off from everything else
+            nearest[landmark] = -1;
+        }
+        return new LandmarkIndex(landmarks, nodeCount, fromLandmarks, toLandmarks);
+    }
+
+    private static long roundTrip(int there, int back) {
+        return there == NO_TRACE || back == NO_TRACE ? Long.MAX_VALUE : (long) there + back;
+    }
+
+    // the service with the largest distance, the lowest id among equals
+    private static int farthest(long[] distances) {
+        int farthest = 0;
+        for(int node = 1; node < distances.length; node++) {
+            if(distances[node] > distances[farthest]) farthest = node;
+        }
+        return farthest;
+    }
+
+    // plain Dijkstra, the source itself is at latency 0
+    private static void distances(CompactGraph graph, int source, int[] distances, IndexedMinHeap heap) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+        Arrays.fill(distances, NO_TRACE);
+        distances[source] = 0;
+        heap.offer(source, 0);
+
+        while(!heap.isEmpty()) {
+            int latency = heap.minKey();
+            int node = heap.poll();
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                long distance = (long) latency + latencies[edge];
+                if(distance < distances[targets[edge]]) {
+                    distances[targets[edge]] = (int) distance;
+                    heap.offer(targets[edge], (int) distance);
+                }
+            }
+        }
+    }
+}
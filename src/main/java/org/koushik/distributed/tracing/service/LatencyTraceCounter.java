@@ -0,0 +1,313 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.IndexedMinHeap;
+import org.koushik.distributed.tracing.model.CompactGraph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts latency-bounded traces by dynamic programming over the latency budget instead of
+ * enumerating every cyclic trace.
+ * <p>
+ * Bucket {@code l} holds, for every service, the number of traces from the source reaching it with
+ * a total latency of exactly {@code l}. As latencies are not negative, buckets are completed in
+ * increasing order and each one is pushed along the out-edges once, which costs
+ * O(limit x connections) time. Connections of latency 0 feed the bucket being pushed itself, so
+ * its services are pushed in a topological order of those connections, every service after the
+ * ones leading to it at no latency. A cycle of such connections would give infinitely many traces
+ * and is rejected.
+ * <ul>
+ *     <li>{@link Mode#DENSE} - only the next {@code min(maxLatency + 1, limit)} buckets can receive
+ *     traces, so they are kept in a ring with one count per service per bucket,
+ *     O(maxLatency x services) memory</li>
+ *     <li>{@link Mode#SPARSE} - only the (service, latency) states actually reached are stored, in
+ *     buckets ordered by latency, and the sweep jumps from one reached latency to the next; for
+ *     large budgets or latencies where the dense ring would not fit</li>
+ * </ul>
+ * Counts saturate at {@link Long#MAX_VALUE} instead of overflowing.
+ */
+public final class LatencyTraceCounter {
+
+    public enum Mode { DENSE, SPARSE, AUTO }
+
+    // AUTO switches to the sparse ring when the dense one would need more memory than this
+    private static final long DENSE_RING_MAX_BYTES = 64L << 20;
+
+    private LatencyTraceCounter() {
+    }
+
+    // number of traces from source to destination with a total latency above 0 and below the limit
+    public static long count(CompactGraph graph, int source, int destination, int latencyLimit) {
+        return count(graph, source, new int[] {destination}, new int[] {latencyLimit}, Mode.AUTO)[0];
+    }
+
+    /**
+     * Answers several (destination, limit) queries from the same source with one sweep up to the
+     * largest limit. Traces may pass through the destination and continue, cycles included.
+     */
+    public static long[] count(CompactGraph graph, int source, int[] destinations, int[] latencyLimits, Mode mode) {
+        if(destinations.length != latencyLimits.length)
+            throw new IllegalArgumentException("Every destination needs a latency limit");
+        int[] order = zeroLatencyOrder(graph);
+
+        int maxLimit = 0;
+        for(int limit: latencyLimits) maxLimit = Math.max(maxLimit, limit);
+
+        long[] counts = new long[destinations.length];
+        if(maxLimit <= 1) return counts;
+
+        // no trace reaches the limit, so a limit below the largest latency needs no more buckets than that
+        int ringSize = (int) Math.min(graph.maxLatency() + 1L, maxLimit);
+        if(mode == Mode.AUTO) {
+            mode = (long) ringSize * graph.nodeCount() * Long.BYTES <= DENSE_RING_MAX_BYTES ? Mode.DENSE : Mode.SPARSE;
+        }
+
+        if(mode == Mode.DENSE) {
+            countDense(graph, source, destinations, latencyLimits, maxLimit, ringSize, order, counts);
+        } else {
+            countSparse(graph, source, destinations, latencyLimits, maxLimit, order, counts);
+        }
+        return counts;
+    }
+
+    private static void countDense(CompactGraph graph, int source, int[] destinations, int[] latencyLimits,
+                                   int maxLimit, int ringSize, int[] order, long[] counts) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+        int nodeCount = graph.nodeCount();
+
+        long[][] ring = new long[ringSize][nodeCount];
+        ring[0][source] = 1;
+        long expanded = 0, relaxed = 0;
+        int depth = 0;
+
+        for(int latency = 0; latency < maxLimit; latency++) {
+            long[] bucket = ring[latency % ringSize];
+
+            for(int rank = 0; rank < nodeCount; rank++) {
+                int node = order == null ? rank : order[rank];
+                long traces = bucket[node];
+                if(traces == 0) continue;
+
+                expanded++;
+                relaxed += offsets[node + 1] - offsets[node];
+                depth = latency;
+                for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    long nextLatency = (long) latency + latencies[edge];
+                    if(nextLatency >= maxLimit) continue;
+
+                    long[] nextBucket = ring[(int) (nextLatency % ringSize)];
+                    nextBucket[targets[edge]] = HopTraceCounter.saturatedAdd(nextBucket[targets[edge]], traces);
+                }
+            }
+
+            // only now the bucket holds the traces arriving through connections of latency 0 too
+            if(latency > 0) {
+                for(int query = 0; query < destinations.length; query++) {
+                    if(latency < latencyLimits[query]) {
+                        counts[query] = HopTraceCounter.saturatedAdd(counts[query], bucket[destinations[query]]);
+                    }
+                }
+            }
+            Arrays.fill(bucket, 0);
+        }
+        GraphMetrics.recordWork(GraphMetrics.Operation.WITHIN_LATENCY, expanded, relaxed, 0, depth);
+    }
+
+    private static void countSparse(CompactGraph graph, int source, int[] destinations, int[] latencyLimits,
+                                    int maxLimit, int[] order, long[] counts) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+
+        // buckets of the latencies reached so far, a bucket is reused once it has been pushed
+        TreeMap<Integer, SparseBucket> pending = new TreeMap<>();
+        Deque<SparseBucket> spare = new ArrayDeque<>();
+        SparseBucket first = new SparseBucket();
+        first.add(source, 1);
+        pending.put(0, first);
+        long expanded = 0, relaxed = 0;
+        int depth = 0;
+
+        // rank of every service in the order of the latency 0 connections, and the services of a bucket in that order
+        int[] ranks = null;
+        IndexedMinHeap byRank = null;
+        if(order != null) {
+            ranks = new int[order.length];
+            for(int rank = 0; rank < order.length; rank++) ranks[order[rank]] = rank;
+            byRank = new IndexedMinHeap();
+            byRank.ensureCapacity(order.length);
+        }
+
+        while(!pending.isEmpty()) {
+            Map.Entry<Integer, SparseBucket> next = pending.pollFirstEntry();
+            int latency = next.getKey();
+            SparseBucket bucket = next.getValue();
+            depth = latency;
+
+            if(order != null) {
+                // first complete the bucket along the connections of latency 0, a service only once all feeding it are done
+                for(int entry = 0; entry < bucket.size; entry++) byRank.offer(bucket.nodes[entry], ranks[bucket.nodes[entry]]);
+                while(!byRank.isEmpty()) {
+                    int node = byRank.poll();
+                    long traces = bucket.get(node);
+                    for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                        if(latencies[edge] != 0) continue;
+                        bucket.add(targets[edge], traces);
+                        byRank.offer(targets[edge], ranks[targets[edge]]);
+                    }
+                }
+            }
+            expanded += bucket.size;
+
+            if(latency > 0) {
+                for(int query = 0; query < destinations.length; query++) {
+                    if(latency < latencyLimits[query]) {
+                        counts[query] = HopTraceCounter.saturatedAdd(counts[query], bucket.get(destinations[query]));
+                    }
+                }
+            }
+
+            for(int entry = 0; entry < bucket.size; entry++) {
+                int node = bucket.nodes[entry];
+                long traces = bucket.traces[entry];
+                relaxed += offsets[node + 1] - offsets[node];
+
+                for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    long nextLatency = (long) latency + latencies[edge];
+                    if(latencies[edge] != 0 && nextLatency < maxLimit) {
+                        SparseBucket nextBucket = pending.get((int) nextLatency);
+                        if(nextBucket == null) {
+                            nextBucket = spare.isEmpty() ? new SparseBucket() : spare.pop();
+                            pending.put((int) nextLatency, nextBucket);
+                        }
+                        nextBucket.add(targets[edge], traces);
+                    }
+                }
+            }
+            bucket.clear();
+            spare.push(bucket);
+        }
+        GraphMetrics.recordWork(GraphMetrics.Operation.WITHIN_LATENCY, expanded, relaxed, 0, depth);
+    }
+
+    /**
+     * The services in a topological order of the connections of latency 0, null when there are
+     * none. Throws when those connections form a cycle, a trace could go round it forever within
+     * any latency limit.
+     */
+    static int[] zeroLatencyOrder(CompactGraph graph) {
+        if(graph.edgeCount() == 0 || graph.minLatency() > 0) return null;
+
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+        int nodeCount = graph.nodeCount();
+
+        // Kahn's algorithm over the latency 0 connections only
+        int[] inDegrees = new int[nodeCount];
+        for(int edge = 0; edge < targets.length; edge++) {
+            if(latencies[edge] == 0) inDegrees[targets[edge]]++;
+        }
+        int[] order = new int[nodeCount];
+        int size = 0;
+        for(int node = 0; node < nodeCount; node++) {
+            if(inDegrees[node] == 0) order[size++] = node;
+        }
+        for(int next = 0; next < size; next++) {
+            int node = order[next];
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                if(latencies[edge] == 0 && --inDegrees[targets[edge]] == 0) order[size++] = targets[edge];
+            }
+        }
+
+        if(size < nodeCount) {
+            for(int node = 0; node < nodeCount; node++) {
+                if(inDegrees[node] > 0) {
+                    throw new IllegalStateException("Connections of latency 0 form a cycle that reaches "
+                            + graph.services().nameOf(node) + ", there are infinitely many latency-bounded traces");
+                }
+            }
+        }
+        return order;
+    }
+
+    // (service -> traces) map of one latency bucket, open addressing over the entry index
+    private static final class SparseBucket {
+        private int[] nodes = new int[8];
+        private long[] traces = new long[8];
+        private int size;
+        private int[] slots = newSlots(16);
+
+        void add(int node, long count) {
+            int mask = slots.length - 1;
+            int slot = home(node, mask);
+            while(slots[slot] >= 0) {
+                int entry = slots[slot];
+                if(nodes[entry] == node) {
+                    traces[entry] = HopTraceCounter.saturatedAdd(traces[entry], count);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if(size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size << 1);
+                traces = Arrays.copyOf(traces, size << 1);
+            }
+            nodes[size] = node;
+            traces[size] = count;
+            slots[slot] = size++;
+
+            if(size << 1 > slots.length) rehash(slots.length << 1);
+        }
+
+        long get(int node) {
+            int mask = slots.length - 1;
+            int slot = home(node, mask);
+            while(slots[slot] >= 0) {
+                int entry = slots[slot];
+                if(nodes[entry] == node) return traces[entry];
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        void clear() {
+            // only the slots in use are reset, the bucket keeps its capacity for the next round
+            int mask = slots.length - 1;
+            for(int entry = 0; entry < size; entry++) {
+                int slot = home(nodes[entry], mask);
+                while(slots[slot] != entry) slot = (slot + 1) & mask;
+                slots[slot] = -1;
+            }
+            size = 0;
+        }
+
+        private static int home(int node, int mask) {
+            int hash = node * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        private void rehash(int capacity) {
+            slots = newSlots(capacity);
+            int mask = capacity - 1;
+            for(int entry = 0; entry < size; entry++) {
+                int slot = home(nodes[entry], mask);
+                while(slots[slot] >= 0) slot = (slot + 1) & mask;
+                slots[slot] = entry;
+            }
+        }
+
+        private static int[] newSlots(int capacity) {
+            int[] newSlots = new int[capacity];
+            Arrays.fill(newSlots, -1);
+            return newSlots;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a topology file (one service graph per line) through memory-mapped windows and parses
+ * the edges directly from the bytes, without charset decoding or per-line Strings.
+ * <p>
+ * The file is mapped window by window, so files larger than 2 GB work as well; since the
+ * {@link ConnectionScanner} is resumable, a line may span any number of windows.
+ */
+public class MappedTopologyReader {
+    // 64 MB keeps the address space use small while making the map calls negligible
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    @FunctionalInterface
+    public interface GraphHandler {
+        void onGraph(long lineNumber, Graph graph);
+    }
+
+    @FunctionalInterface
+    public interface LineHandler {
+        void onLine(long lineNumber, ByteBuffer line);
+    }
+
+    private final Path filePath;
+    private final int windowSize;
+
+    public MappedTopologyReader(Path filePath) {
+        this(filePath, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedTopologyReader(Path filePath, int windowSize) {
+        if(windowSize <= 0) throw new IllegalArgumentException("Window size must be positive");
+        this.filePath = filePath;
+        this.windowSize = windowSize;
+    }
+
+    public void read(GraphHandler handler) throws IOException {
+        read(handler, false);
+    }
+
+    /**
+     * The graph of the first line that is not blank, e.g. the topology to serve, or null when there
+     * is none. The file is streamed like in {@link #read(GraphHandler)}, so the line may be of any
+     * length, and nothing after it is read.
+     */
+    public Graph readFirstGraph() throws IOException {
+        Graph[] first = new Graph[1];
+        read((lineNumber, graph) -> first[0] = graph, true);
+        return first[0];
+    }
+
+    private void read(GraphHandler handler, boolean firstOnly) throws IOException {
+        try(FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long lineNumber = 1;
+            boolean lineStarted = false;
+            boolean lineBlank = true;
+            long lineStart = 0;
+            LineBuilder line = new LineBuilder();
+
+            for(long position = 0; position < fileSize; position += windowSize) {
+                int length = (int) Math.min(windowSize, fileSize - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                for(int i = 0; i < length; i++) {
+                    byte current = window.get(i);
+
+                    if(current == '\n') {
+                        if(firstOnly && lineBlank) {
+                            // skipped rather than parsed, the scanner takes an empty line for an error
+                            line.start();
+                        } else {
+                            handler.onGraph(lineNumber, line.finish(lineNumber, position + i - lineStart));
+                            if(firstOnly) return;
+                        }
+                        lineStart = position + i + 1;
+                        lineNumber++;
+                        lineStarted = false;
+                        lineBlank = true;
+                    } else {
+                        char ch = (char) (current & 0xFF);
+                        line.accept(ch, lineNumber);
+                        lineStarted = true;
+                        if(!ConnectionScanner.isWhitespace(ch)) lineBlank = false;
+                    }
+                }
+            }
+
+            // last line without a trailing line break
+            if(lineStarted && (!firstOnly || !lineBlank)) {
+                handler.onGraph(lineNumber, line.finish(lineNumber, fileSize - lineStart));
+            }
+        }
+    }
+
+    /**
+     * Hands out every line as a read-only slice of the mapped file without parsing it, so lines
+     * can be parsed independently (e.g. on other threads) with {@link #parseLine(long, ByteBuffer)}.
+     * A slice stays valid for as long as it is referenced. A line longer than the window gets a
+     * mapping of its own and therefore has to stay below 2 GB in this mode.
+     */
+    public void readLines(LineHandler handler) throws IOException {
+        try(FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long lineNumber = 1;
+            long position = 0;
+
+            while(position < fileSize) {
+                int length = (int) Math.min(windowSize, fileSize - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean lastWindow = position + length == fileSize;
+
+                // only complete lines are handed out, the window ends after its last line break
+                int windowEnd = lastWindow ? length : lastLineBreak(window, length) + 1;
+
+                if(windowEnd == 0) {
+                    // a single line longer than the window
+                    long lineEnd = findLineBreak(channel, position + length, fileSize);
+                    if(lineEnd - position > Integer.MAX_VALUE)
+                        throw new IllegalStateException("Line " + lineNumber + " exceeds 2 GB, read the file sequentially");
+
+                    handler.onLine(lineNumber++, channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            lineEnd - position).asReadOnlyBuffer());
+                    position = lineEnd + 1;
+                    continue;
+                }
+
+                int lineStart = 0;
+                for(int i = 0; i < windowEnd; i++) {
+                    if(window.get(i) == '\n') {
+                        handler.onLine(lineNumber++, window.slice(lineStart, i - lineStart).asReadOnlyBuffer());
+                        lineStart = i + 1;
+                    }
+                }
+                if(lineStart < windowEnd) {
+                    handler.onLine(lineNumber++, window.slice(lineStart, windowEnd - lineStart).asReadOnlyBuffer());
+                }
+                position += windowEnd;
+            }
+        }
+    }
+
+    public static Graph parseLine(long lineNumber, ByteBuffer line) {
+        LineBuilder builder = new LineBuilder();
+        int limit = line.limit();
+        for(int i = line.position(); i < limit; i++) {
+            builder.accept((char) (line.get(i) & 0xFF), lineNumber);
+        }
+        return builder.finish(lineNumber, limit - line.position());
+    }
+
+    private static int lastLineBreak(ByteBuffer window, int length) {
+        for(int i = length - 1; i >= 0; i--) {
+            if(window.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    // position of the next line break at or after the given position, or the file size
+    private long findLineBreak(FileChannel channel, long position, long fileSize) throws IOException {
+        while(position < fileSize) {
+            int length = (int) Math.min(windowSize, fileSize - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for(int i = 0; i < length; i++) {
+                if(window.get(i) == '\n') return position + i;
+            }
+            position += length;
+        }
+        return fileSize;
+    }
+
+    // scanner and builder of the line being read, replaced once the line's graph is handed out
+    private static final class LineBuilder {
+        private ServiceDictionary dictionary;
+        private CompactGraph.Builder builder;
+        private ConnectionScanner scanner;
+        private long startNanos;
+
+        LineBuilder() {
+            start();
+        }
+
+        void accept(char ch, long lineNumber) {
+            try {
+                scanner.accept(ch);
+            } catch (InvalidConnectionException ex) {
+                throw new InvalidConnectionException(lineNumber, ex.getColumn());
+            }
+        }
+
+        Graph finish(long lineNumber, long lineBytes) {
+            try {
+                scanner.endLine();
+            } catch (InvalidConnectionException ex) {
+                throw new InvalidConnectionException(lineNumber, ex.getColumn());
+            }
+
+            Graph graph = new Graph(builder.build());
+            GraphMetrics.recordBytes(GraphMetrics.Operation.PARSE, lineBytes);
+            GraphMetrics.recordCall(GraphMetrics.Operation.PARSE, startNanos);
+            start();
+            return graph;
+        }
+
+        private void start() {
+            dictionary = new ServiceDictionary();
+            builder = new CompactGraph.Builder(dictionary);
+            scanner = new ConnectionScanner(dictionary, builder::addEdge);
+            startNanos = GraphMetrics.start();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.TraceQuery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the query file format, one query per line:
+ * <pre>
+ * # comment
+ * latency A-B-C
+ * percentiles A-B-C
+ * max-hops C C 3
+ * exact-hops A C 4
+ * shortest A C
+ * k-shortest A C 3
+ * within-latency C C 30
+ * traces max-hops C C 3
+ * </pre>
+ * {@code traces} lists the traces behind a max-hops, exact-hops or within-latency count.
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public final class QueryParser {
+
+    private QueryParser() {
+    }
+
+    public static List<TraceQuery> parseFile(Path queryFile) throws IOException {
+        return parse(Files.readAllLines(queryFile, StandardCharsets.UTF_8));
+    }
+
+    public static List<TraceQuery> parse(List<String> lines) {
+        List<TraceQuery> queries = new ArrayList<>();
+        for(int lineIdx = 0; lineIdx < lines.size(); lineIdx++) {
+            String line = lines.get(lineIdx).trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+
+            try {
+                queries.add(parseQuery(line));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Bad query at line " + (lineIdx + 1) + ": " + ex.getMessage());
+            }
+        }
+        return queries;
+    }
+
+    public static TraceQuery parseQuery(String line) {
+        String[] parts = line.trim().split("\\s+");
+
+        return switch (parts[0]) {
+            case "latency" -> {
+                expectArguments(parts, 1);
+                yield new TraceQuery.TraceLatency(parts[1]);
+            }
+            case "percentiles" -> {
+                expectArguments(parts, 1);
+                yield new TraceQuery.TracePercentiles(parts[1]);
+            }
+            case "max-hops" -> {
+                expectArguments(parts, 3);
+                yield new TraceQuery.MaxHops(parts[1], parts[2], parseNumber(parts[3]));
+            }
+            case "exact-hops" -> {
+                expectArguments(parts, 3);
+                yield new TraceQuery.ExactHops(parts[1], parts[2], parseNumber(parts[3]));
+            }
+            case "shortest" -> {
+                expectArguments(parts, 2);
+                yield new TraceQuery.ShortestTrace(parts[1], parts[2]);
+            }
+            case "k-shortest" -> {
+                expectArguments(parts, 3);
+                yield new TraceQuery.ShortestTraces(parts[1], parts[2], parseNumber(parts[3]));
+            }
+            case "within-latency" -> {
+                expectArguments(parts, 3);
+                yield new TraceQuery.WithinLatency(parts[1], parts[2], parseNumber(parts[3]));
+            }
+            case "traces" -> {
+                if(parts.length < 2) throw new IllegalArgumentException("'traces' expects a count query");
+                yield new TraceQuery.ListTraces(parseQuery(line.trim().substring(parts[0].length())));
+            }
+            default -> throw new IllegalArgumentException("unknown query '" + parts[0] + "'");
+        };
+    }
+
+    private static void expectArguments(String[] parts, int arguments) {
+        if(parts.length != arguments + 1)
+            throw new IllegalArgumentException("'" + parts[0] + "' expects " + arguments + " argument(s)");
+    }
+
+    private static int parseNumber(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("'" + value + "' is not a number");
+        }
+    }
+}
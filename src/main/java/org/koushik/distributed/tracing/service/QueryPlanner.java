@@ -0,0 +1,226 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.ShortestLatencyIndex;
+import org.koushik.distributed.tracing.model.TracePath;
+import org.koushik.distributed.tracing.model.TraceQuery;
+import org.koushik.distributed.tracing.model.TraceTrie;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Answers a batch of {@link TraceQuery queries} against one graph, sharing the graph work between
+ * queries instead of running every query on its own:
+ * <ul>
+ *     <li>shortest traces - one Dijkstra search per distinct source serves all its destinations</li>
+ *     <li>exact hops - one DP sweep per source up to the largest hop count answers all of them</li>
+ *     <li>max hops - one DP sweep per source and destination (traces stop at the destination)</li>
+ *     <li>latency limits - one sweep per source up to the largest limit</li>
+ * </ul>
+ * Answers come back in query order and read the same as the single-query methods of
+ * {@link GraphService}.
+ */
+public class QueryPlanner {
+    // listed traces per query, a longer list ends with "..."
+    public static final int MAX_LISTED_TRACES = 100;
+
+    private final GraphService graphService;
+
+    public QueryPlanner(GraphService graphService) {
+        this.graphService = graphService;
+    }
+
+    public List<String> execute(Graph graph, List<TraceQuery> queries) {
+        long start = GraphMetrics.start();
+        CompactGraph compact = graph.compact();
+        String[] answers = new String[queries.size()];
+
+        // query indexes grouped by the part of the work they can share
+        Map<Integer, List<Integer>> shortestBySource = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> exactHopsBySource = new LinkedHashMap<>();
+        Map<Long, List<Integer>> maxHopsByPair = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> withinLatencyBySource = new LinkedHashMap<>();
+
+        for(int queryIdx = 0; queryIdx < queries.size(); queryIdx++) {
+            TraceQuery query = queries.get(queryIdx);
+
+            if(query instanceof TraceQuery.TraceLatency latency) {
+                answers[queryIdx] = graphService.getTotalAverageLatencyOfGivenTraces(graph, latency.trace());
+            } else if(query instanceof TraceQuery.TracePercentiles percentiles) {
+                answers[queryIdx] = graphService.getLatencyPercentilesOfGivenTrace(graph, percentiles.trace());
+            } else if(query instanceof TraceQuery.ShortestTraces shortestTraces) {
+                answers[queryIdx] = answerKShortestTraces(graph, shortestTraces);
+            } else if(query instanceof TraceQuery.ListTraces listTraces) {
+                answers[queryIdx] = answerListTraces(graph, listTraces);
+            } else if(query instanceof TraceQuery.ShortestTrace shortest) {
+                int sourceId = compact.serviceId(shortest.source());
+                if(isInvalid(shortest.source(), shortest.destination())
+                        || sourceId < 0 || compact.serviceId(shortest.destination()) < 0) {
+                    answers[queryIdx] = "-1";
+                } else {
+                    shortestBySource.computeIfAbsent(sourceId, key -> new ArrayList<>()).add(queryIdx);
+                }
+            } else if(query instanceof TraceQuery.ExactHops exactHops) {
+                if(!plan(compact, answers, queryIdx, exactHops.source(), exactHops.destination(), false)) continue;
+                exactHopsBySource.computeIfAbsent(compact.serviceId(exactHops.source()), key -> new ArrayList<>()).add(queryIdx);
+            } else if(query instanceof TraceQuery.MaxHops maxHops) {
+                if(!plan(compact, answers, queryIdx, maxHops.source(), maxHops.destination(), false)) continue;
+                long pair = ((long) compact.serviceId(maxHops.source()) << 32) | compact.serviceId(maxHops.destination());
+                maxHopsByPair.computeIfAbsent(pair, key -> new ArrayList<>()).add(queryIdx);
+            } else if(query instanceof TraceQuery.WithinLatency withinLatency) {
+                if(!plan(compact, answers, queryIdx, withinLatency.source(), withinLatency.destination(),
+                        withinLatency.latencyLimit() < 0)) continue;
+                withinLatencyBySource.computeIfAbsent(compact.serviceId(withinLatency.source()), key -> new ArrayList<>()).add(queryIdx);
+            }
+        }
+
+        answerShortestTraces(compact, queries, shortestBySource, answers);
+        answerExactHops(compact, queries, exactHopsBySource, answers);
+        answerMaxHops(compact, queries, maxHopsByPair, answers);
+        answerWithinLatency(compact, queries, withinLatencyBySource, answers);
+
+        GraphMetrics.recordCall(GraphMetrics.Operation.QUERY_BATCH, start);
+        return List.of(answers);
+    }
+
+    // the traces with their latencies, e.g. "A-B-C:9, A-D-C:13", pulling no more of them than asked for
+    private String answerKShortestTraces(Graph graph, TraceQuery.ShortestTraces query) {
+        if(query.count() < 1) return "-1";
+
+        Iterator<TracePath> traces = graphService.getShortestTracesByLatency(graph, query.source(), query.destination());
+        StringJoiner answer = new StringJoiner(", ");
+        for(int found = 0; found < query.count() && traces.hasNext(); found++) {
+            answer.add(traces.next().toString());
+        }
+        return answer.length() == 0 ? "NO SUCH TRACE" : answer.toString();
+    }
+
+    // the traces with their latencies in the order they are found, e.g. "C-D-C:16, C-E-B-C:9"
+    private String answerListTraces(Graph graph, TraceQuery.ListTraces query) {
+        TraceTrie trie;
+        if(query.count() instanceof TraceQuery.MaxHops maxHops) {
+            trie = graphService.listTracesWithGivenMaxKHops(graph, maxHops.source(), maxHops.destination(),
+                    maxHops.maxHops(), MAX_LISTED_TRACES, null);
+        } else if(query.count() instanceof TraceQuery.ExactHops exactHops) {
+            trie = graphService.listTracesEqualToGivenHops(graph, exactHops.source(), exactHops.destination(),
+                    exactHops.hops(), MAX_LISTED_TRACES, null);
+        } else {
+            TraceQuery.WithinLatency withinLatency = (TraceQuery.WithinLatency) query.count();
+            trie = graphService.listTracesLessThanGivenLatency(graph, withinLatency.source(), withinLatency.destination(),
+                    withinLatency.latencyLimit(), MAX_LISTED_TRACES, null);
+        }
+
+        StringJoiner answer = new StringJoiner(", ");
+        for(int traceIdx = 0; traceIdx < trie.traceCount(); traceIdx++) answer.add(trie.path(trie.trace(traceIdx)).toString());
+        if(trie.isCapped()) answer.add("...");
+        return answer.length() == 0 ? "NO SUCH TRACE" : answer.toString();
+    }
+
+    // answers invalid (-1) and unknown-service (0) count queries right away, returns true when the query needs planning
+    private boolean plan(CompactGraph compact, String[] answers, int queryIdx, String source, String destination,
+                         boolean invalidLimit) {
+        if(isInvalid(source, destination) || invalidLimit) {
+            answers[queryIdx] = "-1";
+            return false;
+        }
+        if(compact.serviceId(source) < 0 || compact.serviceId(destination) < 0) {
+            answers[queryIdx] = "0";
+            return false;
+        }
+        return true;
+    }
+
+    private void answerShortestTraces(CompactGraph compact, List<TraceQuery> queries,
+                                      Map<Integer, List<Integer>> shortestBySource, String[] answers) {
+        ShortestLatencyIndex index = compact.shortestLatencyIndex();
+        ShortestTraceSearch search = ShortestTraceSearch.forCurrentThread();
+        int[] latencies = null;
+
+        for(Map.Entry<Integer, List<Integer>> group: shortestBySource.entrySet()) {
+            int sourceId = group.getKey();
+            List<Integer> queryIdxs = group.getValue();
+
+            if(index == null && queryIdxs.size() > 1) {
+                // one full search from the source serves every destination asked for
+                if(latencies == null) latencies = new int[compact.nodeCount()];
+                search.shortestTraces(compact, sourceId, latencies);
+            }
+
+            for(int queryIdx: queryIdxs) {
+                TraceQuery.ShortestTrace query = (TraceQuery.ShortestTrace) queries.get(queryIdx);
+                int destId = compact.serviceId(query.destination());
+
+                int latency;
+                if(index != null) latency = index.latency(sourceId, destId);
+                else if(queryIdxs.size() > 1) latency = latencies[destId];
+                else latency = search.shortestTrace(compact, sourceId, destId);
+
+                answers[queryIdx] = String.valueOf(latency);
+            }
+        }
+    }
+
+    private void answerExactHops(CompactGraph compact, List<TraceQuery> queries,
+                                 Map<Integer, List<Integer>> exactHopsBySource, String[] answers) {
+        for(Map.Entry<Integer, List<Integer>> group: exactHopsBySource.entrySet()) {
+            List<Integer> queryIdxs = group.getValue();
+            int[] destinations = new int[queryIdxs.size()];
+            int[] hops = new int[queryIdxs.size()];
+
+            for(int i = 0; i < queryIdxs.size(); i++) {
+                TraceQuery.ExactHops query = (TraceQuery.ExactHops) queries.get(queryIdxs.get(i));
+                destinations[i] = compact.serviceId(query.destination());
+                hops[i] = query.hops();
+            }
+
+            long[] counts = HopTraceCounter.countWithExactHops(compact, group.getKey(), destinations, hops);
+            for(int i = 0; i < queryIdxs.size(); i++) answers[queryIdxs.get(i)] = String.valueOf(counts[i]);
+        }
+    }
+
+    private void answerMaxHops(CompactGraph compact, List<TraceQuery> queries,
+                               Map<Long, List<Integer>> maxHopsByPair, String[] answers) {
+        for(Map.Entry<Long, List<Integer>> group: maxHopsByPair.entrySet()) {
+            List<Integer> queryIdxs = group.getValue();
+            int[] maxHops = new int[queryIdxs.size()];
+
+            for(int i = 0; i < queryIdxs.size(); i++) {
+                maxHops[i] = ((TraceQuery.MaxHops) queries.get(queryIdxs.get(i))).maxHops();
+            }
+
+            long pair = group.getKey();
+            long[] counts = HopTraceCounter.countWithMaxHops(compact, (int) (pair >>> 32), (int) pair, maxHops);
+            for(int i = 0; i < queryIdxs.size(); i++) answers[queryIdxs.get(i)] = String.valueOf(counts[i]);
+        }
+    }
+
+    private void answerWithinLatency(CompactGraph compact, List<TraceQuery> queries,
+                                     Map<Integer, List<Integer>> withinLatencyBySource, String[] answers) {
+        for(Map.Entry<Integer, List<Integer>> group: withinLatencyBySource.entrySet()) {
+            List<Integer> queryIdxs = group.getValue();
+            int[] destinations = new int[queryIdxs.size()];
+            int[] latencyLimits = new int[queryIdxs.size()];
+
+            for(int i = 0; i < queryIdxs.size(); i++) {
+                TraceQuery.WithinLatency query = (TraceQuery.WithinLatency) queries.get(queryIdxs.get(i));
+                destinations[i] = compact.serviceId(query.destination());
+                latencyLimits[i] = query.latencyLimit();
+            }
+
+            long[] counts = LatencyTraceCounter.count(compact, group.getKey(), destinations, latencyLimits,
+                    LatencyTraceCounter.Mode.AUTO);
+            for(int i = 0; i < queryIdxs.size(); i++) answers[queryIdxs.get(i)] = String.valueOf(counts[i]);
+        }
+    }
+
+    private static boolean isInvalid(String source, String destination) {
+        return source == null || source.isBlank() ||
+                destination == null || destination.isBlank();
+    }
+}
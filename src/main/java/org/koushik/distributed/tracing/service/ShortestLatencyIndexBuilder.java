@@ -0,0 +1,119 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.ShortestLatencyIndex;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the all-pairs {@link ShortestLatencyIndex} of a graph snapshot.
+ * <ul>
+ *     <li>sparse graphs - one Dijkstra search per source, the sources spread over a {@link ForkJoinPool}</li>
+ *     <li>dense graphs - blocked Floyd-Warshall, whose O(n^3) beats n searches once most pairs are connected</li>
+ * </ul>
+ * Both give the latency of the shortest trace with at least one hop, as the on-demand search does.
+ */
+public final class ShortestLatencyIndexBuilder {
+    // 64 x 64 ints per block, the three blocks touched per step stay in the L1/L2 cache
+    private static final int BLOCK_SIZE = 64;
+    // Floyd-Warshall is used once a service has connections to more than 1/8 of all services on average
+    private static final int DENSE_GRAPH_RATIO = 8;
+
+    private static final int NO_TRACE = ShortestLatencyIndex.NO_TRACE;
+
+    private ShortestLatencyIndexBuilder() {
+    }
+
+    /**
+     * Builds the index, or returns null when it would need more than the given memory budget and
+     * queries should keep searching on demand.
+     */
+    public static ShortestLatencyIndex build(CompactGraph graph, long memoryBudgetBytes, ForkJoinPool pool) {
+        int nodeCount = graph.nodeCount();
+        if(ShortestLatencyIndex.sizeInBytes(nodeCount) > Math.min(memoryBudgetBytes, (long) Integer.MAX_VALUE * Integer.BYTES))
+            return null;
+
+        int[] latencies = (long) graph.edgeCount() * DENSE_GRAPH_RATIO > (long) nodeCount * nodeCount
+                ? floydWarshall(graph, pool)
+                : repeatedDijkstra(graph, pool);
+
+        return new ShortestLatencyIndex(nodeCount, latencies);
+    }
+
+    static int[] repeatedDijkstra(CompactGraph graph, ForkJoinPool pool) {
+        int nodeCount = graph.nodeCount();
+        int[] latencies = new int[nodeCount * nodeCount];
+
+        // every source writes its own row, the search workspace is per worker thread
+        pool.submit(() -> IntStream.range(0, nodeCount).parallel().forEach(source ->
+                ShortestTraceSearch.forCurrentThread().shortestTraces(graph, source, latencies, source * nodeCount)))
+                .join();
+
+        return latencies;
+    }
+
+    /**
+     * Tiled Floyd-Warshall: for every diagonal block k, first the block itself, then the blocks of
+     * row and column k (in parallel), then all remaining blocks (in parallel). The diagonal starts
+     * at NO_TRACE instead of 0, so it ends up holding the shortest cycles.
+     */
+    static int[] floydWarshall(CompactGraph graph, ForkJoinPool pool) {
+        int n = graph.nodeCount();
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] edgeLatencies = graph.latencies();
+
+        int[] latencies = new int[n * n];
+        Arrays.fill(latencies, NO_TRACE);
+        for(int node = 0; node < n; node++) {
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                latencies[node * n + targets[edge]] = edgeLatencies[edge];
+            }
+        }
+
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for(int k = 0; k < blocks; k++) {
+            int kBlock = k;
+            relaxBlock(latencies, n, kBlock, kBlock, kBlock);
+
+            pool.submit(() -> IntStream.range(0, blocks).parallel().forEach(other -> {
+                if(other == kBlock) return;
+                relaxBlock(latencies, n, kBlock, other, kBlock);
+                relaxBlock(latencies, n, other, kBlock, kBlock);
+            })).join();
+
+            pool.submit(() -> IntStream.range(0, blocks * blocks).parallel().forEach(block -> {
+                int rowBlock = block / blocks, colBlock = block % blocks;
+                if(rowBlock == kBlock || colBlock == kBlock) return;
+                relaxBlock(latencies, n, rowBlock, colBlock, kBlock);
+            })).join();
+        }
+        return latencies;
+    }
+
+    // latencies[i][j] = min(latencies[i][j], latencies[i][k] + latencies[k][j]) for i, j, k in the given blocks
+    private static void relaxBlock(int[] latencies, int n, int rowBlock, int colBlock, int kBlock) {
+        int rowFrom = rowBlock * BLOCK_SIZE, rowTo = Math.min(rowFrom + BLOCK_SIZE, n);
+        int colFrom = colBlock * BLOCK_SIZE, colTo = Math.min(colFrom + BLOCK_SIZE, n);
+        int kFrom = kBlock * BLOCK_SIZE, kTo = Math.min(kFrom + BLOCK_SIZE, n);
+
+        for(int k = kFrom; k < kTo; k++) {
+            int kRow = k * n;
+            for(int i = rowFrom; i < rowTo; i++) {
+                int viaK = latencies[i * n + k];
+                if(viaK == NO_TRACE) continue;
+
+                int iRow = i * n;
+                for(int j = colFrom; j < colTo; j++) {
+                    int fromK = latencies[kRow + j];
+                    if(fromK == NO_TRACE) continue;
+
+                    long candidate = (long) viaK + fromK;
+                    if(candidate < latencies[iRow + j]) latencies[iRow + j] = (int) candidate;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.IndexedMinHeap;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.LandmarkIndex;
+import org.koushik.distributed.tracing.model.ShortestLatencyIndex;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra search for the shortest trace (in terms of latency) over the CSR graph.
+ * <p>
+ * A trace has at least one hop, so the source is not settled at latency 0; it is only reached
+ * again through a cycle, which makes the shortest trace from a service back to itself its
+ * shortest cycle. The workspace (distances and an {@link IndexedMinHeap} with decrease-key) is
+ * kept per thread and reused: distances are invalidated by bumping a generation stamp instead of
+ * being cleared, so a warm search allocates nothing.
+ * <p>
+ * A trace between two different services is searched from both ends at once, forwards from the
+ * source and backwards from the destination over the {@link CompactGraph#reverse() reversed graph},
+ * always extending the side with the smaller frontier. Each side settles about the services within
+ * half the trace's latency, far fewer than a search covering the whole latency. With a
+ * {@link LandmarkIndex} attached to the graph both sides are A* searches (ALT): services are queued
+ * by their latency adjusted by the landmarks' lower bounds, so the searches head for each other and
+ * skip services the landmarks prove cannot be on any trace.
+ */
+public final class ShortestTraceSearch {
+    public static final int NO_TRACE = ShortestLatencyIndex.NO_TRACE;
+    private static final long NO_POTENTIAL = Long.MIN_VALUE;
+
+    private static final ThreadLocal<ShortestTraceSearch> WORKSPACE = ThreadLocal.withInitial(ShortestTraceSearch::new);
+
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    private int[] distances = new int[0];
+    // distances[node] is only valid when stamps[node] equals the current generation
+    private int[] stamps = new int[0];
+    private int generation;
+
+    // the backward side of a bidirectional search, and the landmark potentials of the services it reached
+    private final IndexedMinHeap reverseHeap = new IndexedMinHeap();
+    private int[] reverseDistances = new int[0];
+    private int[] reverseStamps = new int[0];
+    private long[] potentials = new long[0];
+    private int[] potentialStamps = new int[0];
+    // latency of the shortest trace joining the two sides so far
+    private int best;
+    private boolean keysOverflowed;
+
+    public static ShortestTraceSearch forCurrentThread() {
+        return WORKSPACE.get();
+    }
+
+    // latency of the shortest trace from source to destination, NO_TRACE when there is none
+    public int shortestTrace(CompactGraph graph, int source, int destination) {
+        if(source != destination) return bidirectionalSearch(graph, source, destination, graph.landmarkIndex());
+
+        // the shortest cycle, the source is not settled at 0 so there is no other end to search from
+        search(graph, source, destination);
+        return distance(destination);
+    }
+
+    /**
+     * Latencies of the shortest traces from the source to every service, indexed by service id,
+     * NO_TRACE where there is none. The entry of the source itself is its shortest cycle.
+     */
+    public void shortestTraces(CompactGraph graph, int source, int[] latencies) {
+        shortestTraces(graph, source, latencies, 0);
+    }
+
+    // same as above, writing the latencies into the given array starting at offset
+    public void shortestTraces(CompactGraph graph, int source, int[] latencies, int offset) {
+        search(graph, source, -1);
+        for(int node = 0; node < graph.nodeCount(); node++) {
+            latencies[offset + node] = distance(node);
+        }
+    }
+
+    // settles nodes in latency order until the destination is settled, or all of them when it is -1
+    private void search(CompactGraph graph, int source, int destination) {
+        prepare(graph.nodeCount());
+
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+
+        // the search starts from the connections of the source, the source itself stays unsettled
+        long heapPushes = relax(offsets, targets, latencies, source, 0);
+        long expanded = 1;
+        long relaxed = offsets[source + 1] - offsets[source];
+
+        while(!heap.isEmpty()) {
+            int currentLatency = heap.minKey();
+            int node = heap.poll();
+            if(node == destination) break;
+
+            heapPushes += relax(offsets, targets, latencies, node, currentLatency);
+            expanded++;
+            relaxed += offsets[node + 1] - offsets[node];
+        }
+        heap.clear();
+
+        GraphMetrics.recordWork(GraphMetrics.Operation.SHORTEST_TRACE, expanded, relaxed, heapPushes, 0);
+    }
+
+    private int bidirectionalSearch(CompactGraph graph, int source, int destination, LandmarkIndex landmarks) {
+        prepare(graph.nodeCount());
+        CompactGraph reverse = graph.reverse();
+        best = NO_TRACE;
+        keysOverflowed = false;
+        // with landmarks keys are twice the reduced latencies, so the halved potentials stay integers
+        int scale = landmarks == null ? 1 : 2;
+        long expanded = 0, relaxed = 0, heapPushes = 0;
+
+        long sourcePotential = potential(source, source, destination, landmarks);
+        long destPotential = potential(destination, source, destination, landmarks);
+        if(sourcePotential != NO_POTENTIAL && destPotential != NO_POTENTIAL) {
+            distances[source] = 0;
+            stamps[source] = generation;
+            heap.offer(source, 0);
+            reverseDistances[destination] = 0;
+            reverseStamps[destination] = generation;
+            reverseHeap.offer(destination, 0);
+            heapPushes = 2;
+        }
+
+        while(!heap.isEmpty() && !reverseHeap.isEmpty()) {
+            // a shorter trace would have to join two services neither side has settled yet
+            if((long) heap.minKey() + reverseHeap.minKey() >= (long) scale * best + destPotential - sourcePotential) break;
+
+            expanded++;
+            if(heap.size() <= reverseHeap.size()) {
+                int node = heap.poll();
+                relaxed += graph.offsets()[node + 1] - graph.offsets()[node];
+                heapPushes += relaxSide(graph, node, source, destination, landmarks, sourcePotential, true);
+            } else {
+                int node = reverseHeap.poll();
+                relaxed += reverse.offsets()[node + 1] - reverse.offsets()[node];
+                heapPushes += relaxSide(reverse, node, source, destination, landmarks, destPotential, false);
+            }
+            if(keysOverflowed) break;
+        }
+        heap.clear();
+        reverseHeap.clear();
+
+        GraphMetrics.recordWork(GraphMetrics.Operation.SHORTEST_TRACE, expanded, relaxed, heapPushes, 0);
+        // only traces of around a billion could overflow the doubled keys, they are searched without landmarks
+        return keysOverflowed ? bidirectionalSearch(graph, source, destination, null) : best;
+    }
+
+    /**
+     * Relaxes the connections of a node settled on one side, joining the other side where it was
+     * reached; returns the heap pushes. Keys are the reduced latencies, scaled by 2 with landmarks,
+     * relative to where the side started, so they start at 0 and never decrease.
+     */
+    private int relaxSide(CompactGraph side, int node, int source, int destination, LandmarkIndex landmarks,
+                          long startPotential, boolean forward) {
+        int[] sideDistances = forward ? distances : reverseDistances;
+        int[] sideStamps = forward ? stamps : reverseStamps;
+        IndexedMinHeap sideHeap = forward ? heap : reverseHeap;
+        int[] otherDistances = forward ? reverseDistances : distances;
+        int[] otherStamps = forward ? reverseStamps : stamps;
+        int scale = landmarks == null ? 1 : 2;
+
+        int[] offsets = side.offsets();
+        int[] targets = side.targets();
+        int[] latencies = side.latencies();
+        int currentLatency = sideDistances[node];
+        int pushes = 0;
+
+        for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+            int neighbour = targets[edge];
+            long latency = (long) currentLatency + latencies[edge];
+
+            if(otherStamps[neighbour] == generation) {
+                long trace = latency + otherDistances[neighbour];
+                if(trace < best) best = (int) trace;
+            }
+
+            if(sideStamps[neighbour] != generation) {
+                sideStamps[neighbour] = generation;
+                sideDistances[neighbour] = NO_TRACE;
+            }
+            if(latency >= sideDistances[neighbour]) continue;
+
+            long potential = potential(neighbour, source, destination, landmarks);
+            if(potential == NO_POTENTIAL) continue;
+
+            long key = scale * latency + (forward ? potential - startPotential : startPotential - potential);
+            if(key >= NO_TRACE) {
+                keysOverflowed = true;
+                return pushes;
+            }
+            sideDistances[neighbour] = (int) latency;
+            sideHeap.offer(neighbour, (int) key);
+            pushes++;
+        }
+        return pushes;
+    }
+
+    /**
+     * Twice the average potential of the node, the landmarks' lower bound on the rest of the trace
+     * from it minus the one on the trace up to it. Adding it to the forward latencies and subtracting
+     * it from the backward ones keeps every connection's latency non-negative for both sides, so
+     * both are still Dijkstra searches and may stop as a plain bidirectional search does. 0 without
+     * landmarks, NO_POTENTIAL when the landmarks prove the node is on no trace.
+     */
+    private long potential(int node, int source, int destination, LandmarkIndex landmarks) {
+        if(landmarks == null) return 0;
+        if(potentialStamps[node] == generation) return potentials[node];
+
+        int toDestination = landmarks.lowerBound(node, destination);
+        int fromSource = landmarks.lowerBound(source, node);
+        long potential = toDestination == NO_TRACE || fromSource == NO_TRACE ? NO_POTENTIAL : (long) toDestination - fromSource;
+        potentials[node] = potential;
+        potentialStamps[node] = generation;
+        return potential;
+    }
+
+    // returns the number of heap pushes
+    private int relax(int[] offsets, int[] targets, int[] latencies, int node, int currentLatency) {
+        int pushes = 0;
+        for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+            int neighbour = targets[edge];
+            long latency = (long) currentLatency + latencies[edge];
+
+            if(latency < distance(neighbour)) {
+                distances[neighbour] = (int) latency;
+                stamps[neighbour] = generation;
+                heap.offer(neighbour, (int) latency);
+                pushes++;
+            }
+        }
+        return pushes;
+    }
+
+    private int distance(int node) {
+        return stamps[node] == generation ? distances[node] : NO_TRACE;
+    }
+
+    private void prepare(int nodeCount) {
+        if(distances.length < nodeCount) {
+            distances = new int[nodeCount];
+            stamps = new int[nodeCount];
+            reverseDistances = new int[nodeCount];
+            reverseStamps = new int[nodeCount];
+            potentials = new long[nodeCount];
+            potentialStamps = new int[nodeCount];
+            generation = 0;
+        }
+        heap.ensureCapacity(nodeCount);
+        reverseHeap.ensureCapacity(nodeCount);
+
+        if(++generation == 0) {
+            // the stamps wrapped around, old stamps could look current again
+            Arrays.fill(stamps, 0);
+            Arrays.fill(reverseStamps, 0);
+            Arrays.fill(potentialStamps, 0);
+            generation = 1;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.LatencySketch;
+import org.koushik.distributed.tracing.model.LiveGraph;
+import org.koushik.distributed.tracing.model.Span;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the service graph from a stream of raw spans, one per line:
+ * <pre>
+ * traceId,spanId,parentSpanId,service,duration
+ * </pre>
+ * The parent span id is empty or '-' for root spans, blank lines and lines starting with '#' are
+ * ignored and malformed lines are counted and skipped.
+ * <p>
+ * Reading and aggregation run on different threads connected by a bounded queue, so a slow
+ * aggregation blocks the reader instead of buffering the stream (backpressure). The aggregator
+ * joins every span with its parent inside a window of the last {@code windowSize} spans; a child
+ * that arrives before its parent waits in a second window of the same size. Spans falling out of
+ * either window are evicted and counted, which keeps memory bounded whatever the stream looks like.
+ * If the aggregator fails, the next {@link #submit} or {@link #close()} rethrows its failure
+ * instead of waiting for a queue nobody drains any more.
+ * <p>
+ * Every joined call records the child span's duration in the {@link LatencySketch} of the
+ * parent service -> child service connection, so memory per connection stays fixed whatever the
+ * traffic. The connection's mean latency and its sketch are written into the {@link Graph} as it
+ * runs. Calls within the same service (internal spans) are not connections. Given a
+ * {@link LiveGraph} with {@link #feed(LiveGraph)}, every change of a connection's mean is also
+ * set on it, which keeps e.g. {@link DynamicShortestTraces} over an existing topology up to date.
+ */
+public class SpanIngestor implements AutoCloseable {
+    public static final int DEFAULT_WINDOW_SIZE = 100_000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8_192;
+
+    // handed to the aggregator by close() to end the stream
+    private static final Span END_OF_STREAM = new Span("", "", null, "", 0);
+    // how long a full queue is waited on before checking that the aggregator still runs
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final int windowSize;
+    private final BlockingQueue<Span> queue;
+    private final Thread aggregator;
+    // what ended the aggregator early, null while it runs or after it finished normally
+    private volatile Throwable failure;
+
+    // owned by the aggregator thread
+    private final Map<SpanKey, String> openSpans;
+    private final Map<SpanKey, List<Span>> waitingChildren = new LinkedHashMap<>();
+    private int waitingCount;
+
+    // guarded by the graph's lock, read by snapshots while the aggregator runs
+    private final Graph graph = new Graph(List.of());
+    private final Map<String, Map<String, LatencySketch>> edgeSketches = new TreeMap<>();
+
+    private volatile long spans;
+    private volatile long calls;
+    private volatile long evictedSpans;
+    private volatile long droppedChildren;
+    private volatile long rejectedLines;
+    // optional graph receiving the connection latencies as they change
+    private volatile LiveGraph liveGraph;
+
+    public SpanIngestor() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public SpanIngestor(int windowSize, int queueCapacity) {
+        if(windowSize <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("Window size and queue capacity must be positive");
+
+        this.windowSize = windowSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        // insertion ordered, so the eldest entry is the span seen longest ago
+        this.openSpans = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SpanKey, String> eldest) {
+                if(size() <= SpanIngestor.this.windowSize) return false;
+                evictedSpans++;
+                return true;
+            }
+        };
+        this.aggregator = new Thread(this::aggregate, "span-aggregator");
+        this.aggregator.setDaemon(true);
+    }
+
+    // sets every connection latency the spans give on the live graph too, from the next call on
+    public SpanIngestor feed(LiveGraph liveGraph) {
+        this.liveGraph = liveGraph;
+        return this;
+    }
+
+    public SpanIngestor start() {
+        aggregator.start();
+        return this;
+    }
+
+    // hands the span to the aggregator, blocking while the queue is full
+    public void submit(Span span) throws InterruptedException {
+        checkAggregator();
+        offer(span);
+    }
+
+    // reads and submits all spans of the input, returns the number of lines read
+    public long ingest(Reader input) throws IOException, InterruptedException {
+        BufferedReader reader = input instanceof BufferedReader buffered ? buffered : new BufferedReader(input);
+        long lines = 0;
+        String line;
+        while((line = reader.readLine()) != null) {
+            lines++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) continue;
+
+            try {
+                submit(parseSpan(line));
+            } catch (IllegalArgumentException ex) {
+                rejectedLines++;
+            }
+        }
+        return lines;
+    }
+
+    // ends the stream and waits until every submitted span is aggregated
+    @Override
+    public void close() throws InterruptedException {
+        checkAggregator();
+        if(!aggregator.isAlive()) return;
+        offer(END_OF_STREAM);
+        aggregator.join();
+        checkAggregator();
+    }
+
+    private void offer(Span span) throws InterruptedException {
+        while(!queue.offer(span, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkAggregator();
+            if(!aggregator.isAlive()) throw new IllegalStateException("Span aggregator is not running");
+        }
+    }
+
+    private void checkAggregator() {
+        if(failure != null) throw new IllegalStateException("Span aggregation failed", failure);
+    }
+
+    public static Span parseSpan(String line) {
+        String[] fields = line.split(",", -1);
+        if(fields.length != 5) throw new IllegalArgumentException("expected 5 fields: " + line);
+
+        String traceId = fields[0].trim();
+        String spanId = fields[1].trim();
+        String parentSpanId = fields[2].trim();
+        String service = fields[3].trim();
+        if(traceId.isEmpty() || spanId.isEmpty() || service.isEmpty())
+            throw new IllegalArgumentException("trace id, span id and service are required: " + line);
+        // a service the query syntax could not name would be unreachable in the graph
+        for(int i = 0; i < service.length(); i++) {
+            if(!ConnectionScanner.isNameChar(service.charAt(i)))
+                throw new IllegalArgumentException("invalid service name: " + line);
+        }
+
+        long duration;
+        try {
+            duration = Long.parseLong(fields[4].trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid duration: " + line);
+        }
+        if(duration < 0) throw new IllegalArgumentException("negative duration: " + line);
+
+        boolean root = parentSpanId.isEmpty() || parentSpanId.equals("-");
+        return new Span(traceId, spanId, root ? null : parentSpanId, service, duration);
+    }
+
+    // frozen version of the graph built so far, safe to query from any thread while ingestion goes on
+    public Graph snapshot() {
+        synchronized (graph) {
+            Map<String, Map<String, Integer>> adjacency = graph.getAdjacencyList();
+            Graph copy = new Graph(new ArrayList<>(adjacency.keySet()));
+            adjacency.forEach((caller, callees) -> callees.forEach((callee, latency) -> {
+                copy.addAdjacentVertex(caller, callee, latency);
+                copy.setLatencySketch(caller, callee, edgeSketches.get(caller).get(callee).copy());
+            }));
+            return copy.freeze();
+        }
+    }
+
+    // one line per connection: caller->callee calls, mean, p50, p90, p99 and max latency
+    public List<String> describeConnections() {
+        List<String> lines = new ArrayList<>();
+        synchronized (graph) {
+            edgeSketches.forEach((caller, callees) -> callees.forEach((callee, sketch) -> lines.add(
+                    String.format(Locale.ROOT, "%s->%s calls=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", caller, callee,
+                            sketch.count(), sketch.mean(), sketch.percentile(0.5), sketch.percentile(0.9),
+                            sketch.percentile(0.99), sketch.max()))));
+        }
+        return lines;
+    }
+
+    public long spans() {
+        return spans;
+    }
+
+    // parent/child pairs joined into a call between two services
+    public long calls() {
+        return calls;
+    }
+
+    // spans pushed out of the join window, children arriving later can no longer join them
+    public long evictedSpans() {
+        return evictedSpans;
+    }
+
+    // children given up on while waiting for their parent, these calls are lost
+    public long droppedChildren() {
+        return droppedChildren;
+    }
+
+    public long rejectedLines() {
+        return rejectedLines;
+    }
+
+    private void aggregate() {
+        try {
+            Span span;
+            while((span = queue.take()) != END_OF_STREAM) {
+                join(span);
+                spans++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            // kept for the producer, which would otherwise block on a queue that is no longer drained
+            failure = t;
+        }
+    }
+
+    private void join(Span span) {
+        SpanKey key = new SpanKey(span.traceId(), span.spanId());
+        openSpans.put(key, span.service());
+
+        // children that came first can be joined now
+        List<Span> children = waitingChildren.remove(key);
+        if(children != null) {
+            waitingCount -= children.size();
+            for(Span child: children) recordCall(span.service(), child);
+        }
+
+        if(span.isRoot()) {
+            addService(span.service());
+            return;
+        }
+
+        SpanKey parentKey = new SpanKey(span.traceId(), span.parentSpanId());
+        String parentService = openSpans.get(parentKey);
+        if(parentService != null) {
+            recordCall(parentService, span);
+        } else {
+            waitingChildren.computeIfAbsent(parentKey, k -> new ArrayList<>(2)).add(span);
+            if(++waitingCount > windowSize) evictWaitingChildren();
+        }
+    }
+
+    private void evictWaitingChildren() {
+        Iterator<List<Span>> eldest = waitingChildren.values().iterator();
+        while(waitingCount > windowSize && eldest.hasNext()) {
+            int dropped = eldest.next().size();
+            eldest.remove();
+            waitingCount -= dropped;
+            droppedChildren += dropped;
+        }
+    }
+
+    private void recordCall(String caller, Span callee) {
+        calls++;
+        if(caller.equals(callee.service())) return;
+
+        int latency;
+        synchronized (graph) {
+            LatencySketch sketch = edgeSketches.computeIfAbsent(caller, k -> new TreeMap<>())
+                    .computeIfAbsent(callee.service(), k -> new LatencySketch());
+            sketch.record(callee.duration());
+            latency = graphLatency(sketch);
+
+            graph.addVertex(caller);
+            graph.addVertex(callee.service());
+            graph.addAdjacentVertex(caller, callee.service(), latency);
+            graph.setLatencySketch(caller, callee.service(), sketch);
+        }
+        // outside the graph's lock, the live graph takes its own; unchanged latencies notify nobody
+        LiveGraph live = liveGraph;
+        if(live != null) live.setLatency(caller, callee.service(), latency);
+    }
+
+    private void addService(String service) {
+        synchronized (graph) {
+            graph.addVertex(service);
+        }
+    }
+
+    // the trace algorithms need positive int latencies, so the mean is rounded into 1..Integer.MAX_VALUE
+    private static int graphLatency(LatencySketch sketch) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(sketch.mean())));
+    }
+
+    private record SpanKey(String traceId, String spanId) {}
+}
@@ -0,0 +1,236 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.HelperUtil;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic service meshes for load and scale tests, either as a text topology line
+ * ({@code svc_0->svc_17:12, ...}) or as a binary graph snapshot.
+ * <p>
+ * The connections of every service are drawn from a random generator seeded with the seed and the
+ * service id only, so any service's connections can be re-created at any time. That lets the
+ * generator stream its output in constant memory (one row of connections) and write the binary
+ * format, which needs the counts up front and the arrays one after another, in a few passes over
+ * the services instead of holding the graph.
+ */
+public class TopologyGenerator {
+    public static final String SERVICE_PREFIX = "svc_";
+
+    public enum LatencyDistribution {
+        // every latency in the range equally likely
+        UNIFORM,
+        // most latencies around the geometric mean of the range, with a long tail on both sides
+        LOG_NORMAL
+    }
+
+    /**
+     * Generator settings.
+     * <ul>
+     *     <li>{@code services} - number of services</li>
+     *     <li>{@code fanOutExponent} - exponent of the power-law (Pareto) distribution of the number
+     *     of connections per service, above 1; the smaller, the more services with a large fan-out</li>
+     *     <li>{@code maxFanOut} - upper bound of the connections per service</li>
+     *     <li>{@code cycleDensity} - share of the connections that point back to a service with a
+     *     smaller id, 0 gives an acyclic mesh</li>
+     *     <li>{@code minLatency}, {@code maxLatency}, {@code latencyDistribution} - the latencies</li>
+     *     <li>{@code seed} - the same settings and seed always give the same topology</li>
+     * </ul>
+     */
+    public record Settings(int services, double fanOutExponent, int maxFanOut, double cycleDensity,
+                           int minLatency, int maxLatency, LatencyDistribution latencyDistribution, long seed) {
+
+        public static final Settings DEFAULT = new Settings(1_000, 2.0, 100, 0.1, 1, 100,
+                LatencyDistribution.UNIFORM, 1);
+
+        public Settings {
+            if(services < 1) throw new IllegalArgumentException("Service count must be positive");
+            if(!(fanOutExponent > 1)) throw new IllegalArgumentException("Fan-out exponent must be above 1");
+            if(maxFanOut < 1) throw new IllegalArgumentException("Max fan-out must be positive");
+            if(!(cycleDensity >= 0 && cycleDensity <= 1)) throw new IllegalArgumentException("Cycle density must be between 0 and 1");
+            if(minLatency < 1 || maxLatency < minLatency) throw new IllegalArgumentException("Invalid latency range");
+            if(latencyDistribution == null) throw new IllegalArgumentException("Latency distribution is required");
+        }
+
+        /**
+         * Settings from a comma separated list on top of the defaults, e.g.
+         * {@code services=100000,fan-out=2.5,max-fan-out=50,cycles=0.2,latency=1..500,distribution=log-normal,seed=7}
+         */
+        public static Settings parse(String text) {
+            Settings defaults = DEFAULT;
+            int services = defaults.services, maxFanOut = defaults.maxFanOut;
+            int minLatency = defaults.minLatency, maxLatency = defaults.maxLatency;
+            double fanOutExponent = defaults.fanOutExponent, cycleDensity = defaults.cycleDensity;
+            LatencyDistribution latencyDistribution = defaults.latencyDistribution;
+            long seed = defaults.seed;
+            if(text == null || text.isBlank()) return defaults;
+
+            for(String setting: text.split(",")) {
+                int separator = setting.indexOf('=');
+                if(separator < 0) throw new IllegalArgumentException("Invalid generator setting: " + setting.trim());
+                String key = setting.substring(0, separator).trim();
+                String value = setting.substring(separator + 1).trim();
+
+                try {
+                    switch (key) {
+                        case "services" -> services = Integer.parseInt(value);
+                        case "fan-out" -> fanOutExponent = Double.parseDouble(value);
+                        case "max-fan-out" -> maxFanOut = Integer.parseInt(value);
+                        case "cycles" -> cycleDensity = Double.parseDouble(value);
+                        case "latency" -> {
+                            int range = value.indexOf("..");
+                            minLatency = Integer.parseInt(range < 0 ? value : value.substring(0, range));
+                            maxLatency = range < 0 ? minLatency : Integer.parseInt(value.substring(range + 2));
+                        }
+                        case "distribution" -> latencyDistribution =
+                                LatencyDistribution.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+                        case "seed" -> seed = Long.parseLong(value);
+                        default -> throw new IllegalArgumentException("Unknown generator setting: " + key);
+                    }
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid generator setting: " + setting.trim());
+                }
+            }
+            return new Settings(services, fanOutExponent, maxFanOut, cycleDensity, minLatency, maxLatency,
+                    latencyDistribution, seed);
+        }
+    }
+
+    private final Settings settings;
+    // the connections of the current row, sorted by target
+    private final int[] rowTargets;
+    private final int[] rowLatencies;
+    private int rowSize;
+
+    public TopologyGenerator(Settings settings) {
+        this.settings = settings;
+        int capacity = Math.min(settings.maxFanOut(), settings.services() - 1);
+        this.rowTargets = new int[Math.max(capacity, 0)];
+        this.rowLatencies = new int[rowTargets.length];
+    }
+
+    // binary graph snapshot for a .dtg file, the text format otherwise; returns the connection count
+    public long writeTo(Path file) throws IOException {
+        if(HelperUtil.isSnapshotPath(file.toString())) return writeSnapshot(file);
+
+        try (Writer text = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            long connections = writeText(text);
+            text.write(System.lineSeparator());
+            return connections;
+        }
+    }
+
+    // writes the whole topology as one connection line, without the line separator
+    public long writeText(Writer text) throws IOException {
+        long connections = 0;
+        for(int source = 0; source < settings.services(); source++) {
+            generateRow(source);
+            for(int i = 0; i < rowSize; i++) {
+                if(connections++ > 0) text.write(", ");
+                text.write(SERVICE_PREFIX);
+                text.write(Integer.toString(source));
+                text.write("->" + SERVICE_PREFIX);
+                text.write(Integer.toString(rowTargets[i]));
+                text.write(':');
+                text.write(Integer.toString(rowLatencies[i]));
+            }
+        }
+        return connections;
+    }
+
+    public long writeSnapshot(Path file) throws IOException {
+        int services = settings.services();
+        // first pass counts the connections for the header, the next three write the CSR arrays
+        long connections = 0;
+        for(int source = 0; source < services; source++) {
+            generateRow(source);
+            connections += rowSize;
+        }
+        if(connections > Integer.MAX_VALUE - 8) throw new IllegalArgumentException(
+                "Too many connections for a graph snapshot: " + connections);
+
+        try (GraphSnapshot.Writer snapshot = new GraphSnapshot.Writer(file, services, (int) connections)) {
+            int offset = 0;
+            snapshot.putInt(offset);
+            for(int source = 0; source < services; source++) {
+                generateRow(source);
+                offset += rowSize;
+                snapshot.putInt(offset);
+            }
+            for(int source = 0; source < services; source++) {
+                generateRow(source);
+                snapshot.putInts(rowTargets, 0, rowSize);
+            }
+            for(int source = 0; source < services; source++) {
+                generateRow(source);
+                snapshot.putInts(rowLatencies, 0, rowSize);
+            }
+            for(int id = 0; id < services; id++) {
+                snapshot.putServiceName(SERVICE_PREFIX + id);
+            }
+            snapshot.finish();
+        }
+        return connections;
+    }
+
+    // fills the row buffers with the connections of the given service, the same ones on every call
+    private void generateRow(int source) {
+        SplittableRandom random = new SplittableRandom(settings.seed() ^ (source * 0x9E3779B97F4A7C15L));
+        int services = settings.services();
+        // without cycles every connection points forward, with only cycles every one points back
+        int reachable = settings.cycleDensity() == 0 ? services - 1 - source
+                : settings.cycleDensity() == 1 ? source : services - 1;
+        int fanOut = Math.min(fanOut(random), Math.min(reachable, rowTargets.length));
+
+        // distinct targets other than the source; repeated draws are topped up a few times, a
+        // service that still falls short keeps the connections it has
+        rowSize = 0;
+        for(int round = 0; round < 4 && rowSize < fanOut; round++) {
+            while(rowSize < fanOut) {
+                rowTargets[rowSize++] = target(random, source, services);
+            }
+            Arrays.sort(rowTargets, 0, rowSize);
+            int unique = 0;
+            for(int i = 0; i < rowSize; i++) {
+                if(unique == 0 || rowTargets[i] != rowTargets[unique - 1]) rowTargets[unique++] = rowTargets[i];
+            }
+            rowSize = unique;
+        }
+
+        for(int i = 0; i < rowSize; i++) {
+            rowLatencies[i] = latency(random);
+        }
+    }
+
+    // Pareto distributed with a minimum of one connection
+    private int fanOut(SplittableRandom random) {
+        double uniform = 1.0 - random.nextDouble();
+        double fanOut = Math.pow(uniform, -1.0 / (settings.fanOutExponent() - 1));
+        return fanOut >= settings.maxFanOut() ? settings.maxFanOut() : (int) fanOut;
+    }
+
+    private int target(SplittableRandom random, int source, int services) {
+        boolean backward = source == services - 1
+                || (source > 0 && (settings.cycleDensity() == 1 || random.nextDouble() < settings.cycleDensity()));
+        return backward ? random.nextInt(source) : random.nextInt(source + 1, services);
+    }
+
+    private int latency(SplittableRandom random) {
+        int min = settings.minLatency(), max = settings.maxLatency();
+        if(settings.latencyDistribution() == LatencyDistribution.UNIFORM) return random.nextInt(min, max + 1);
+
+        // median at the geometric mean, the range spans four standard deviations
+        double median = Math.sqrt((double) min * max);
+        double sigma = Math.log((double) max / min) / 4;
+        long latency = Math.round(median * Math.exp(sigma * random.nextGaussian()));
+        return (int) Math.max(min, Math.min(max, latency));
+    }
+}
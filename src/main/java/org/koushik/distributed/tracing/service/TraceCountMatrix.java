@@ -0,0 +1,190 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Trace counts between all pairs of services at once, by repeated squaring of the adjacency matrix.
+ * <p>
+ * Entry {@code (i, j)} of {@code A^k} is the number of traces from service {@code i} to {@code j}
+ * with exactly {@code k} hops, so a hop count in the thousands needs only O(log k) matrix products.
+ * Matrices are row-major {@code long[]} of size n x n, multiplied in cache-sized blocks with the
+ * row blocks spread over a {@link ForkJoinPool}. Counts are either kept modulo a prime or
+ * saturated at {@link Long#MAX_VALUE}.
+ * <p>
+ * Unlike {@link HopTraceCounter#countWithMaxHops} the max-hop counts here include traces passing
+ * through the destination before their last hop; they count every trace of 1..k hops.
+ */
+public final class TraceCountMatrix {
+    // 64 x 64 longs per block, three blocks stay well inside a 256 KB L2 cache
+    private static final int BLOCK_SIZE = 64;
+    private static final long SATURATED = 0;
+
+    private final int size;
+    private final long[] counts;
+    private final long modulus;
+
+    private TraceCountMatrix(int size, long[] counts, long modulus) {
+        this.size = size;
+        this.counts = counts;
+        this.modulus = modulus;
+    }
+
+    /**
+     * Exact-hop counts modulo the given prime, which has to be below 2^31 so products of two
+     * residues fit into a long.
+     */
+    public static TraceCountMatrix exactHops(CompactGraph graph, int hops, long modulus, ForkJoinPool pool) {
+        validateModulus(modulus);
+        return power(adjacency(graph, modulus), hops, pool);
+    }
+
+    // exact-hop counts saturating at Long.MAX_VALUE
+    public static TraceCountMatrix exactHops(CompactGraph graph, int hops, ForkJoinPool pool) {
+        return power(adjacency(graph, SATURATED), hops, pool);
+    }
+
+    // counts of traces with 1..maxHops hops modulo the given prime (below 2^31)
+    public static TraceCountMatrix maxHops(CompactGraph graph, int maxHops, long modulus, ForkJoinPool pool) {
+        validateModulus(modulus);
+        return powerSum(adjacency(graph, modulus), maxHops, pool);
+    }
+
+    // counts of traces with 1..maxHops hops saturating at Long.MAX_VALUE
+    public static TraceCountMatrix maxHops(CompactGraph graph, int maxHops, ForkJoinPool pool) {
+        return powerSum(adjacency(graph, SATURATED), maxHops, pool);
+    }
+
+    public long count(int sourceId, int destId) {
+        return counts[sourceId * size + destId];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static TraceCountMatrix adjacency(CompactGraph graph, long modulus) {
+        int size = graph.nodeCount();
+        if((long) size * size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many services for an all-pairs count matrix: " + size);
+
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        long[] counts = new long[size * size];
+        for(int node = 0; node < size; node++) {
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                counts[node * size + targets[edge]] = 1;
+            }
+        }
+        return new TraceCountMatrix(size, counts, modulus);
+    }
+
+    private static TraceCountMatrix identity(int size, long modulus) {
+        long[] counts = new long[size * size];
+        for(int i = 0; i < size; i++) counts[i * size + i] = 1;
+        return new TraceCountMatrix(size, counts, modulus);
+    }
+
+    // A^hops by binary exponentiation
+    private static TraceCountMatrix power(TraceCountMatrix base, int hops, ForkJoinPool pool) {
+        if(hops < 0) throw new IllegalArgumentException("Hops must not be negative");
+
+        TraceCountMatrix result = identity(base.size, base.modulus);
+        TraceCountMatrix square = base;
+        for(int remaining = hops; remaining > 0; remaining >>>= 1) {
+            if((remaining & 1) == 1) result = result.multiply(square, pool);
+            if(remaining > 1) square = square.multiply(square, pool);
+        }
+        return result;
+    }
+
+    /**
+     * A + A^2 + ... + A^hops by doubling: with P = A^m and S = A + ... + A^m,
+     * S' = S + P * S covers 2m hops and P' = P * P, one more A is added for odd bits.
+     */
+    private static TraceCountMatrix powerSum(TraceCountMatrix base, int hops, ForkJoinPool pool) {
+        if(hops < 0) throw new IllegalArgumentException("Hops must not be negative");
+        if(hops == 0) return new TraceCountMatrix(base.size, new long[base.size * base.size], base.modulus);
+
+        TraceCountMatrix sum = base;
+        TraceCountMatrix power = base;
+        for(int bit = Integer.highestOneBit(hops) >>> 1; bit > 0; bit >>>= 1) {
+            sum = sum.add(power.multiply(sum, pool));
+            power = power.multiply(power, pool);
+            if((hops & bit) != 0) {
+                power = power.multiply(base, pool);
+                sum = sum.add(power);
+            }
+        }
+        return sum;
+    }
+
+    private TraceCountMatrix add(TraceCountMatrix other) {
+        long[] result = new long[counts.length];
+        for(int i = 0; i < counts.length; i++) {
+            result[i] = modulus == SATURATED ? HopTraceCounter.saturatedAdd(counts[i], other.counts[i])
+                    : (counts[i] + other.counts[i]) % modulus;
+        }
+        return new TraceCountMatrix(size, result, modulus);
+    }
+
+    private TraceCountMatrix multiply(TraceCountMatrix other, ForkJoinPool pool) {
+        long[] result = new long[counts.length];
+        int rowBlocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        // every task owns a block of result rows, so no two tasks write the same cells
+        pool.submit(() -> IntStream.range(0, rowBlocks).parallel()
+                .forEach(rowBlock -> multiplyRowBlock(other, result, rowBlock * BLOCK_SIZE)))
+                .join();
+
+        return new TraceCountMatrix(size, result, modulus);
+    }
+
+    private void multiplyRowBlock(TraceCountMatrix other, long[] result, int rowFrom) {
+        int rowTo = Math.min(rowFrom + BLOCK_SIZE, size);
+        long[] left = counts;
+        long[] right = other.counts;
+
+        for(int innerFrom = 0; innerFrom < size; innerFrom += BLOCK_SIZE) {
+            int innerTo = Math.min(innerFrom + BLOCK_SIZE, size);
+
+            for(int colFrom = 0; colFrom < size; colFrom += BLOCK_SIZE) {
+                int colTo = Math.min(colFrom + BLOCK_SIZE, size);
+
+                for(int row = rowFrom; row < rowTo; row++) {
+                    int resultRow = row * size;
+                    for(int inner = innerFrom; inner < innerTo; inner++) {
+                        long value = left[row * size + inner];
+                        if(value == 0) continue;
+
+                        int rightRow = inner * size;
+                        if(modulus == SATURATED) {
+                            for(int col = colFrom; col < colTo; col++) {
+                                result[resultRow + col] = saturatedMultiplyAdd(result[resultRow + col], value, right[rightRow + col]);
+                            }
+                        } else {
+                            for(int col = colFrom; col < colTo; col++) {
+                                result[resultRow + col] = (result[resultRow + col] + value * right[rightRow + col]) % modulus;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static long saturatedMultiplyAdd(long accumulator, long left, long right) {
+        if(right == 0) return accumulator;
+        long high = Math.multiplyHigh(left, right);
+        long product = left * right;
+        if(high != 0 || product < 0) return Long.MAX_VALUE;
+        return HopTraceCounter.saturatedAdd(accumulator, product);
+    }
+
+    private static void validateModulus(long modulus) {
+        if(modulus < 2 || modulus > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Modulus must be between 2 and 2^31 - 1: " + modulus);
+    }
+}
@@ -0,0 +1,247 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.TraceTrie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lists the traces behind the hop and latency counts, with the same bounds as
+ * {@link HopTraceCounter} and {@link LatencyTraceCounter}: cycles included, at most the given
+ * number of traces.
+ * <p>
+ * Traces are found by depth-first search and handed to a {@link TraceConsumer} as they are found.
+ * The search is one loop over an explicit stack of primitive frames (service, next connection,
+ * latency so far, trie node), so any hop limit or latency budget is fine and the memory it needs
+ * grows with the depth only. What is followed and reported is up to a {@link TraceVisitor}.
+ * <p>
+ * Traces are kept in a {@link TraceTrie}, one int array entry per service, so traces sharing a
+ * prefix share its entries and a trace itself is one int. A branch that ends no trace is dropped
+ * from the trie on backtrack, so the trie only grows with the traces found, not with the search.
+ * <p>
+ * For bounds the counters cannot express, {@link #count} counts the traces a visitor reports on a
+ * {@link ForkJoinPool} without keeping them, see {@link CountTask}.
+ */
+public final class TraceEnumerator {
+    // a counting task hands subtrees to other workers only up to this many hops below its own start,
+    // and only while its own queue holds at most MAX_SURPLUS_TASKS tasks nobody has stolen
+    private static final int SPLIT_DEPTH = 4;
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    /**
+     * Receives every trace as it is found, as the trie node of its last service. The node stays
+     * valid after the call, the trie keeps every trace found.
+     */
+    @FunctionalInterface
+    public interface TraceConsumer {
+        void accept(TraceTrie trie, int node);
+    }
+
+    private TraceEnumerator() {
+    }
+
+    // traces with 1..maxHops hops, ending the first time they reach the destination
+    public static TraceTrie withMaxHops(CompactGraph graph, int source, int destination, int maxHops,
+                                        int maxTraces, TraceConsumer consumer) {
+        return enumerate(graph, source, TraceVisitor.maxHops(graph, destination, maxHops), maxTraces, consumer);
+    }
+
+    // traces with exactly the given hops, they may pass through the destination on the way
+    public static TraceTrie withExactHops(CompactGraph graph, int source, int destination, int hops,
+                                          int maxTraces, TraceConsumer consumer) {
+        return enumerate(graph, source, TraceVisitor.exactHops(graph, destination, hops), maxTraces, consumer);
+    }
+
+    // traces with a total latency above 0 and below the limit, they may pass through the destination on the way
+    public static TraceTrie withinLatency(CompactGraph graph, int source, int destination, int latencyLimit,
+                                          int maxTraces, TraceConsumer consumer) {
+        return enumerate(graph, source, TraceVisitor.withinLatency(graph, destination, latencyLimit), maxTraces, consumer);
+    }
+
+    // the traces from the source the visitor reports, at most maxTraces of them
+    public static TraceTrie enumerate(CompactGraph graph, int source, TraceVisitor visitor, int maxTraces,
+                                      TraceConsumer consumer) {
+        if(source < 0 || source >= graph.nodeCount()) throw new IllegalArgumentException("Unknown service id");
+        if(maxTraces < 1) throw new IllegalArgumentException("Trace cap must be positive: " + maxTraces);
+
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] latencies = graph.latencies();
+        TraceTrie trie = new TraceTrie(graph.services(), source);
+
+        // frame i is the trace with i hops: its last service, the next connection out of it to try,
+        // its latency, its trie node and the traces found before it, to tell whether its branch ended any
+        int[] nodes = new int[16];
+        int[] cursors = new int[16];
+        int[] costs = new int[16];
+        int[] trieNodes = new int[16];
+        int[] tracesBefore = new int[16];
+        int top = 0;
+        nodes[0] = source;
+        cursors[0] = offsets[source];
+        trieNodes[0] = TraceTrie.ROOT;
+        long expanded = 1, relaxed = 0;
+        int depth = 0;
+
+        while(top >= 0) {
+            int node = nodes[top];
+            int edge = cursors[top];
+            if(edge == offsets[node + 1]) {
+                pop(trie, trieNodes, tracesBefore, top--);
+                continue;
+            }
+            cursors[top] = edge + 1;
+            relaxed++;
+
+            int target = targets[edge];
+            int hops = top + 1;
+            long latency = (long) costs[top] + latencies[edge];
+            if(!visitor.canReach(target, hops, latency)) continue;
+
+            int tracesSoFar = trie.traceCount();
+            int child = trie.add(trieNodes[top], target, latencies[edge]);
+            if(visitor.endsTrace(target, hops, latency)) {
+                if(tracesSoFar == maxTraces) {
+                    // there is one more trace than asked for
+                    trie.truncate(child);
+                    trie.markCapped();
+                    while(top >= 0) pop(trie, trieNodes, tracesBefore, top--);
+                    break;
+                }
+                trie.addTrace(child);
+                if(consumer != null) consumer.accept(trie, child);
+            }
+
+            if(visitor.extendsTrace(target, hops, latency) && latency <= Integer.MAX_VALUE) {
+                if(++top == nodes.length) {
+                    int newLength = nodes.length << 1;
+                    nodes = Arrays.copyOf(nodes, newLength);
+                    cursors = Arrays.copyOf(cursors, newLength);
+                    costs = Arrays.copyOf(costs, newLength);
+                    trieNodes = Arrays.copyOf(trieNodes, newLength);
+                    tracesBefore = Arrays.copyOf(tracesBefore, newLength);
+                }
+                nodes[top] = target;
+                cursors[top] = offsets[target];
+                costs[top] = (int) latency;
+                trieNodes[top] = child;
+                tracesBefore[top] = tracesSoFar;
+                expanded++;
+                depth = Math.max(depth, top);
+            } else if(trie.traceCount() == tracesSoFar) {
+                trie.truncate(child);
+            }
+        }
+
+        GraphMetrics.recordWork(GraphMetrics.Operation.ENUMERATE_TRACES, expanded, relaxed, 0, depth);
+        return trie;
+    }
+
+    /**
+     * Number of traces from the source the visitor reports, counted on the given pool. The visitor
+     * is called from several threads at once, so it must not change state.
+     */
+    public static long count(CompactGraph graph, int source, TraceVisitor visitor, ForkJoinPool pool) {
+        if(source < 0 || source >= graph.nodeCount()) throw new IllegalArgumentException("Unknown service id");
+
+        LongAdder traces = new LongAdder();
+        pool.invoke(new CountTask(graph, visitor, traces, source, 0, 0));
+        return traces.sum();
+    }
+
+    /**
+     * Counts the traces below one trace prefix, by the same depth-first search as
+     * {@link #enumerate} without the trie. Near its own start, a task forks the subtree below a
+     * connection as a new task instead of walking it, but only while its worker's queue is short,
+     * i.e. while idle workers are stealing from it. A small subtree is done before the queue drains
+     * and is not split; a large one keeps its worker's queue drained by thieves and is split, and
+     * its stolen parts split again the same way. Tasks count in a local and add to a shared
+     * {@link LongAdder} once, so workers do not contend on the count.
+     */
+    private static final class CountTask extends RecursiveAction {
+        private final CompactGraph graph;
+        private final TraceVisitor visitor;
+        private final LongAdder traces;
+        private final int start;
+        private final int startHops;
+        private final int startLatency;
+
+        CountTask(CompactGraph graph, TraceVisitor visitor, LongAdder traces, int start, int startHops, int startLatency) {
+            this.graph = graph;
+            this.visitor = visitor;
+            this.traces = traces;
+            this.start = start;
+            this.startHops = startHops;
+            this.startLatency = startLatency;
+        }
+
+        @Override
+        protected void compute() {
+            int[] offsets = graph.offsets();
+            int[] targets = graph.targets();
+            int[] latencies = graph.latencies();
+            List<CountTask> forked = new ArrayList<>();
+
+            int[] nodes = new int[16];
+            int[] cursors = new int[16];
+            int[] costs = new int[16];
+            int top = 0;
+            nodes[0] = start;
+            cursors[0] = offsets[start];
+            costs[0] = startLatency;
+            long count = 0, expanded = 1, relaxed = 0;
+            int depth = startHops;
+
+            while(top >= 0) {
+                int node = nodes[top];
+                int edge = cursors[top];
+                if(edge == offsets[node + 1]) {
+                    top--;
+                    continue;
+                }
+                cursors[top] = edge + 1;
+                relaxed++;
+
+                int target = targets[edge];
+                int hops = startHops + top + 1;
+                long latency = (long) costs[top] + latencies[edge];
+                if(!visitor.canReach(target, hops, latency)) continue;
+                if(visitor.endsTrace(target, hops, latency)) count++;
+                if(!visitor.extendsTrace(target, hops, latency) || latency > Integer.MAX_VALUE) continue;
+
+                if(top < SPLIT_DEPTH && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS) {
+                    CountTask task = new CountTask(graph, visitor, traces, target, hops, (int) latency);
+                    task.fork();
+                    forked.add(task);
+                    continue;
+                }
+
+                if(++top == nodes.length) {
+                    int newLength = nodes.length << 1;
+                    nodes = Arrays.copyOf(nodes, newLength);
+                    cursors = Arrays.copyOf(cursors, newLength);
+                    costs = Arrays.copyOf(costs, newLength);
+                }
+                nodes[top] = target;
+                cursors[top] = offsets[target];
+                costs[top] = (int) latency;
+                expanded++;
+                depth = Math.max(depth, hops);
+            }
+
+            traces.add(count);
+            GraphMetrics.recordWork(GraphMetrics.Operation.ENUMERATE_TRACES, expanded, relaxed, 0, depth);
+            for(CountTask task: forked) task.join();
+        }
+    }
+
+    // leaves the frame, dropping its branch from the trie when it ended no trace
+    private static void pop(TraceTrie trie, int[] trieNodes, int[] tracesBefore, int frame) {
+        if(frame > 0 && trie.traceCount() == tracesBefore[frame]) trie.truncate(trieNodes[frame]);
+    }
+}
@@ -0,0 +1,152 @@
+package org.koushik.distributed.tracing.service;
+
+import org.koushik.distributed.tracing.helper.IndexedMinHeap;
+import org.koushik.distributed.tracing.model.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * The bound of a trace enumeration, asked by {@link TraceEnumerator} about every connection it
+ * could take: whether a trace reaching the target with the given hops and latency is worth
+ * following at all, whether it is a trace to report and whether it may be extended further.
+ * <p>
+ * The visitors built here only let the enumeration step onto a service from which the
+ * destination can still be reached within the remaining hops or latency, known from one search
+ * over the reversed graph.
+ */
+public interface TraceVisitor {
+    int UNREACHABLE = Integer.MAX_VALUE;
+
+    // false when no trace through the target with these hops and latency can meet the bound
+    boolean canReach(int target, int hops, long latency);
+
+    boolean endsTrace(int target, int hops, long latency);
+
+    boolean extendsTrace(int target, int hops, long latency);
+
+    // traces with 1..maxHops hops, ending the first time they reach the destination
+    static TraceVisitor maxHops(CompactGraph graph, int destination, int maxHops) {
+        int[] remaining = hopsToDestination(graph, destination);
+        return new TraceVisitor() {
+            @Override
+            public boolean canReach(int target, int hops, long latency) {
+                return remaining[target] != UNREACHABLE && hops + remaining[target] <= maxHops;
+            }
+
+            @Override
+            public boolean endsTrace(int target, int hops, long latency) {
+                return target == destination;
+            }
+
+            @Override
+            public boolean extendsTrace(int target, int hops, long latency) {
+                return target != destination && hops < maxHops;
+            }
+        };
+    }
+
+    // traces with exactly the given hops, they may pass through the destination on the way
+    static TraceVisitor exactHops(CompactGraph graph, int destination, int exactHops) {
+        int[] remaining = hopsToDestination(graph, destination);
+        return new TraceVisitor() {
+            @Override
+            public boolean canReach(int target, int hops, long latency) {
+                return remaining[target] != UNREACHABLE && hops + remaining[target] <= exactHops;
+            }
+
+            @Override
+            public boolean endsTrace(int target, int hops, long latency) {
+                return target == destination && hops == exactHops;
+            }
+
+            @Override
+            public boolean extendsTrace(int target, int hops, long latency) {
+                return hops < exactHops;
+            }
+        };
+    }
+
+    // traces with a total latency above 0 and below the limit, they may pass through the destination on the way
+    static TraceVisitor withinLatency(CompactGraph graph, int destination, int latencyLimit) {
+        // connections of latency 0 are fine as long as they do not form a cycle a trace could go round forever
+        LatencyTraceCounter.zeroLatencyOrder(graph);
+
+        int[] remaining = latenciesToDestination(graph, destination);
+        return new TraceVisitor() {
+            @Override
+            public boolean canReach(int target, int hops, long latency) {
+                return remaining[target] != UNREACHABLE && latency + remaining[target] < latencyLimit;
+            }
+
+            @Override
+            public boolean endsTrace(int target, int hops, long latency) {
+                return target == destination && latency > 0;
+            }
+
+            @Override
+            public boolean extendsTrace(int target, int hops, long latency) {
+                // canReach already keeps the latency below the limit
+                return true;
+            }
+        };
+    }
+
+    // breadth-first search from the destination over the reversed connections
+    private static int[] hopsToDestination(CompactGraph graph, int destination) {
+        checkServiceId(graph, destination);
+
+        CompactGraph reverse = graph.reverse();
+        int[] offsets = reverse.offsets();
+        int[] targets = reverse.targets();
+        int[] hops = new int[graph.nodeCount()];
+        Arrays.fill(hops, UNREACHABLE);
+        int[] queue = new int[graph.nodeCount()];
+        int head = 0, tail = 0;
+        hops[destination] = 0;
+        queue[tail++] = destination;
+
+        while(head < tail) {
+            int node = queue[head++];
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                if(hops[targets[edge]] == UNREACHABLE) {
+                    hops[targets[edge]] = hops[node] + 1;
+                    queue[tail++] = targets[edge];
+                }
+            }
+        }
+        return hops;
+    }
+
+    // Dijkstra from the destination over the reversed connections
+    private static int[] latenciesToDestination(CompactGraph graph, int destination) {
+        checkServiceId(graph, destination);
+
+        CompactGraph reverse = graph.reverse();
+        int[] offsets = reverse.offsets();
+        int[] targets = reverse.targets();
+        int[] latencies = reverse.latencies();
+        int[] distances = new int[graph.nodeCount()];
+        Arrays.fill(distances, UNREACHABLE);
+        IndexedMinHeap heap = new IndexedMinHeap();
+        heap.ensureCapacity(graph.nodeCount());
+        distances[destination] = 0;
+        heap.offer(destination, 0);
+
+        while(!heap.isEmpty()) {
+            int latency = heap.minKey();
+            int node = heap.poll();
+            for(int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                long caller = (long) latency + latencies[edge];
+                if(caller < distances[targets[edge]]) {
+                    distances[targets[edge]] = (int) caller;
+                    heap.offer(targets[edge], (int) caller);
+                }
+            }
+        }
+        return distances;
+    }
+
+    private static void checkServiceId(CompactGraph graph, int service) {
+        if(service < 0 || service >= graph.nodeCount()) throw new IllegalArgumentException("Unknown service id");
+    }
+}
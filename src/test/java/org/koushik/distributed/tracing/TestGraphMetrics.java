@@ -0,0 +1,63 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.service.GraphMetrics;
+import org.koushik.distributed.tracing.service.GraphService;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit test for the graph operation metrics. Other tests record into the same counters, so only
+ * the differences are checked.
+ */
+class TestGraphMetrics {
+
+    @Test
+    void test_operationsRecordCallsAndWork() {
+        GraphService graphService = new GraphService();
+        Map<String, Long> before = GraphMetrics.counters();
+
+        Graph graph = graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, "A", "C"), is(9));
+        assertThat(graphService.findNoOfTracesWithGivenMaxKHops(graph, "C", "C", 3), is(2L));
+        assertThat(graphService.getPossibleTracesLessThanGivenLatency(graph, "C", "C", 30), is(7L));
+        Map<String, Long> after = GraphMetrics.counters();
+
+        assertThat(delta(before, after, "parse.calls"), greaterThanOrEqualTo(1L));
+        assertThat(delta(before, after, "parse.bytes"), greaterThanOrEqualTo(43L));
+        assertThat(delta(before, after, "shortest_trace.calls"), greaterThanOrEqualTo(1L));
+        // A is expanded forwards and C backwards, meeting at B
+        assertThat(delta(before, after, "shortest_trace.nodes_expanded"), greaterThanOrEqualTo(2L));
+        assertThat(delta(before, after, "shortest_trace.heap_pushes"), greaterThanOrEqualTo(3L));
+        assertThat(delta(before, after, "max_hops.edges_relaxed"), greaterThanOrEqualTo(5L));
+        assertThat(after.get("max_hops.max_depth"), greaterThanOrEqualTo(3L));
+        assertThat(after.get("within_latency.max_depth"), greaterThanOrEqualTo(20L));
+
+        String dump = GraphMetrics.dump();
+        assertThat(dump, containsString("shortest_trace calls="));
+        assertThat(dump, containsString("MB/s"));
+    }
+
+    @Test
+    void test_countersExportedThroughJmx() throws Exception {
+        GraphMetrics.registerMBean();
+        GraphMetrics.registerMBean();
+
+        new GraphService().parseServiceGraph("AB5, BC4");
+        Object dump = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(GraphMetrics.OBJECT_NAME), "Dump");
+        assertThat((String) dump, containsString("parse calls="));
+    }
+
+    private static long delta(Map<String, Long> before, Map<String, Long> after, String counter) {
+        return after.get(counter) - before.get(counter);
+    }
+}
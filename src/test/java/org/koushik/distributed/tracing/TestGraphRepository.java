@@ -0,0 +1,114 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.LatencySketch;
+import org.koushik.distributed.tracing.service.GraphRepository;
+import org.koushik.distributed.tracing.service.GraphService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for frozen graph versions and their publishing.
+ */
+class TestGraphRepository {
+    static GraphService graphService = new GraphService();
+
+    @Test
+    void test_frozenGraphRejectsChanges() {
+        Graph graph = graphService.parseServiceGraph("AB5, BC4");
+        graph.setLatencySketch("A", "B", LatencySketch.of(5, 6));
+        Graph frozen = graph.freeze();
+
+        assertThat(frozen.isFrozen(), is(true));
+        assertThat(frozen.freeze() == frozen, is(true));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.addAdjacentVertex("A", "C", 3));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.addVertex("X"));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.getAdjacencyList().get("A").put("C", 3));
+
+        // the mutable graph goes on changing without touching the frozen version
+        graph.addVertex("X");
+        graph.addAdjacentVertex("B", "X", 7);
+        graph.getLatencySketch("A", "B").record(1000);
+        assertThat(frozen.getLatency("B", "X"), is(-1));
+        assertThat(frozen.compact().serviceId("X"), is(-1));
+        assertThat(frozen.getLatencySketch("A", "B").count(), is(2L));
+        assertThat(graphService.getTotalAverageLatencyOfGivenTraces(frozen, "A-B-C"), is("9"));
+
+        Graph copy = frozen.mutableCopy();
+        copy.addAdjacentVertex("C", "A", 1);
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(copy, "A", "A"), is(10));
+        assertThat(copy.getLatencySketch("A", "B").count(), is(2L));
+    }
+
+    @Test
+    void test_readersSeeCompleteVersions() throws Exception {
+        // every version is a ring A-B-C-D-A whose connections all have the version's latency
+        GraphRepository repository = new GraphRepository(ring(1));
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+
+        List<Future<Integer>> checks = new ArrayList<>();
+        for (int reader = 0; reader < 4; reader++) {
+            checks.add(readers.submit(() -> {
+                int versionsRead = 0;
+                while (writing.get()) {
+                    GraphRepository.Version version = repository.current();
+                    int latency = version.graph().getLatency("A", "B");
+                    String trace = graphService.getTotalAverageLatencyOfGivenTraces(version.graph(), "A-B-C-D-A");
+                    if (!trace.equals(String.valueOf(4 * latency))) throw new AssertionError("torn version: " + trace);
+                    versionsRead++;
+                }
+                return versionsRead;
+            }));
+        }
+
+        for (int latency = 2; latency <= 200; latency++) {
+            int next = latency;
+            repository.update(graph -> {
+                for (String connection : new String[] {"AB", "BC", "CD", "DA"}) {
+                    graph.addAdjacentVertex(connection.substring(0, 1), connection.substring(1), next);
+                }
+            });
+        }
+        writing.set(false);
+
+        for (Future<Integer> check : checks) check.get();
+        readers.shutdown();
+
+        assertThat(repository.current().number(), is(199L));
+        assertThat(repository.graph().getLatency("D", "A"), is(200));
+        assertThat(repository.publish(ring(7)).number(), is(200L));
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(repository.graph(), "A", "A"), is(28));
+    }
+
+    private static Graph ring(int latency) {
+        return graphService.parseServiceGraph("AB" + latency + ", BC" + latency + ", CD" + latency + ", DA" + latency);
+    }
+
+    @Test
+    void test_publishedVersionsGetLandmarkIndex() {
+        GraphRepository repository = new GraphRepository(graphService.parseServiceGraph("AB5, BC4"), 2);
+        assertThat(repository.graph().compact().landmarkIndex().landmarkCount(), is(2));
+
+        repository.publish(graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7"));
+        assertThat(repository.graph().compact().landmarkIndex().nodeCount(), is(5));
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(repository.graph(), "A", "C"), is(9));
+
+        repository.update(graph -> graph.addAdjacentVertex("A", "C", 2));
+        assertThat(repository.graph().compact().landmarkIndex().landmarkCount(), is(2));
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(repository.graph(), "A", "C"), is(2));
+
+        assertThat(new GraphRepository().graph().compact().landmarkIndex(), is(nullValue()));
+    }
+}
@@ -3,17 +3,29 @@ package org.koushik.distributed.tracing;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.koushik.distributed.tracing.model.AllConnections;
+import org.koushik.distributed.tracing.model.CompactGraph;
 import org.koushik.distributed.tracing.model.ConnectionDetails;
 import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.ShortestLatencyIndex;
+import org.koushik.distributed.tracing.service.GraphMetrics;
 import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.HopTraceCounter;
+import org.koushik.distributed.tracing.service.InvalidConnectionException;
+import org.koushik.distributed.tracing.service.LatencyTraceCounter;
+import org.koushik.distributed.tracing.service.ShortestTraceSearch;
+import org.koushik.distributed.tracing.service.TraceCountMatrix;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -85,7 +97,24 @@ class TestGraphService {
         Exception ex = assertThrows(IllegalArgumentException.class,
                 () -> graphService.parseInputServiceConnectionDetails(invalidInput));
 
-        assertThat("Bad Input value(s)!", is(ex.getMessage()));
+        assertThat("Bad Input value(s)! Invalid connection at column 1", is(ex.getMessage()));
+    }
+
+    @Test
+    void test_whenTryToParseInvalidTokenReportsItsColumn() {
+        InvalidConnectionException ex = assertThrows(InvalidConnectionException.class,
+                () -> graphService.parseServiceGraph("AB5, BC4, C-D8, DE6"));
+
+        assertThat(11L, is(ex.getColumn()));
+    }
+
+    @Test
+    void test_parseServiceGraphInSinglePass() {
+        Graph parsedGraph = graphService.parseServiceGraph("AB5, BC4, CD8, DC9, DE10, AD5, CE2, EB3, AE7");
+
+        assertThat(parsedGraph.getAdjacencyList(), is(graph.getAdjacencyList()));
+        assertThat("NO SUCH TRACE", is(graphService.getTotalAverageLatencyOfGivenTraces(parsedGraph, "A-E-D")));
+        assertThat(9, is(graphService.getShortestTraceByLatencyBetweenGivenNodes(parsedGraph, "B", "B")));
     }
 
     @Test
@@ -151,12 +180,12 @@ class TestGraphService {
         String source = "C", destination = "C";
         int maxHops = 3;
 
-        assertThat(2, is(graphService.findNoOfTracesWithGivenMaxKHops(graph, source, destination, maxHops)));
+        assertThat(2L, is(graphService.findNoOfTracesWithGivenMaxKHops(graph, source, destination, maxHops)));
     }
 
     @Test
     void test_findNumberOfTracesWithGivenMaxKHopsForNullOrEmptyNodes() {
-        assertThat(-1, allOf(is(graphService.findNoOfTracesWithGivenMaxKHops(graph, null, null, 3)),
+        assertThat(-1L, allOf(is(graphService.findNoOfTracesWithGivenMaxKHops(graph, null, null, 3)),
                 is(graphService.findNoOfTracesWithGivenMaxKHops(graph, "", "", 3))));
     }
 
@@ -165,12 +194,12 @@ class TestGraphService {
         String source = "C", destination = "C";
         int hops = 3;
 
-        assertThat(1, is(graphService.findNoOfTracesEqualToGivenHops(graph, source, destination, hops)));
+        assertThat(1L, is(graphService.findNoOfTracesEqualToGivenHops(graph, source, destination, hops)));
     }
 
     @Test
     void test_findNumberOfTracesEqualToGivenHopsForNullOrEmptyNodes() {
-        assertThat(-1, allOf(is(graphService.findNoOfTracesEqualToGivenHops(graph, null, null, 3)),
+        assertThat(-1L, allOf(is(graphService.findNoOfTracesEqualToGivenHops(graph, null, null, 3)),
                 is(graphService.findNoOfTracesEqualToGivenHops(graph, "", "", 3))));
     }
 
@@ -192,14 +221,286 @@ class TestGraphService {
         String source = "A", destination = "C";
         int latencyLimit = 25;
 
-        assertThat(7, is(graphService.getPossibleTracesLessThanGivenLatency(graph, source, destination, latencyLimit)));
+        assertThat(7L, is(graphService.getPossibleTracesLessThanGivenLatency(graph, source, destination, latencyLimit)));
     }
 
     @Test
     void test_findNoOfPossibleTracesBetweenNullOrEmptyNodesOrNegativeLatency() {
-        assertThat(-1, allOf(is(graphService.getPossibleTracesLessThanGivenLatency(graph, null, null, 25)),
+        assertThat(-1L, allOf(is(graphService.getPossibleTracesLessThanGivenLatency(graph, null, null, 25)),
                                 is(graphService.getPossibleTracesLessThanGivenLatency(graph, "", "", 25)),
                                 is(graphService.getPossibleTracesLessThanGivenLatency(graph, "A", "C", -1))));
     }
 
+    @Test
+    void test_parseDelimitedInputWithMultiCharacterServiceNames() {
+        String input = "checkout->payments:12, payments->ledger:30, checkout->ledger:50, AB5";
+
+        AllConnections result = graphService.parseInputServiceConnectionDetails(input);
+
+        assertThat(result.services(), containsInAnyOrder("checkout", "payments", "ledger", "A", "B"));
+        assertThat(5, is(result.dictionary().size()));
+
+        Graph namedGraph = graphService.createServiceGraph(result);
+
+        assertThat(30, is(namedGraph.getLatency("payments", "ledger")));
+        assertThat("42", is(graphService.getTotalAverageLatencyOfGivenTraces(namedGraph, "checkout->payments->ledger")));
+        assertThat(42, is(graphService.getShortestTraceByLatencyBetweenGivenNodes(namedGraph, "checkout", "ledger")));
+    }
+
+    @Test
+    void test_validateGraphForInvalidDelimitedInput() {
+        assertThat(false, allOf(
+                is(graphService.validateGraphNodesInput("checkout->:12")),
+                is(graphService.validateGraphNodesInput("checkout->payments")),
+                is(graphService.validateGraphNodesInput("check out->payments:12"))
+        ));
+    }
+
+    @Test
+    void test_findNumberOfTracesWithLargeHopsDoesNotEnumerateOrOverflow() {
+        // every service calls every other one, so the traces grow as 4^hops
+        Graph fullMesh = graphService.parseServiceGraph(
+                "AB1, AC1, AD1, AE1, BA1, BC1, BD1, BE1, CA1, CB1, CD1, CE1, DA1, DB1, DC1, DE1, EA1, EB1, EC1, ED1");
+
+        // closed walks of length k in the complete graph K5: (4^k + 4 * (-1)^k) / 5
+        assertThat(209716L, is(graphService.findNoOfTracesEqualToGivenHops(fullMesh, "A", "A", 10)));
+        assertThat(Long.MAX_VALUE, is(graphService.findNoOfTracesEqualToGivenHops(fullMesh, "A", "A", 200)));
+    }
+
+    @Test
+    void test_countTracesWithinLatencyInDenseAndSparseMode() {
+        CompactGraph compact = graph.compact();
+        int source = compact.serviceId("C");
+        int[] destinations = {compact.serviceId("C"), compact.serviceId("C"), compact.serviceId("E")};
+        int[] latencyLimits = {30, 300, 30};
+
+        long[] dense = LatencyTraceCounter.count(compact, source, destinations, latencyLimits, LatencyTraceCounter.Mode.DENSE);
+        long[] sparse = LatencyTraceCounter.count(compact, source, destinations, latencyLimits, LatencyTraceCounter.Mode.SPARSE);
+
+        assertThat(dense, is(sparse));
+        assertThat(graphService.getPossibleTracesLessThanGivenLatency(graph, "C", "C", 30), is(dense[0]));
+        assertThat(graphService.getPossibleTracesLessThanGivenLatency(graph, "C", "C", 300), is(dense[1]));
+        assertThat(graphService.getPossibleTracesLessThanGivenLatency(graph, "C", "E", 30), is(dense[2]));
+    }
+
+    @Test
+    void test_countTracesWithinLatencyOverHugeLatencies() {
+        // the sparse sweep only visits the latencies reached, and sums past Integer.MAX_VALUE are cut off
+        CompactGraph compact = graphService.parseServiceGraph("A->B:1500000000, B->C:1500000000, A->C:5, C->A:1000000000")
+                .compact();
+        int a = compact.serviceId("A"), c = compact.serviceId("C");
+        int[] destinations = {c, c, a};
+        int[] latencyLimits = {2_000_000_000, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        // A-C and A-C-A-C below 2000000000, A-C-A-C-A-C at 2000000015 below Integer.MAX_VALUE too
+
+        assertThat(LatencyTraceCounter.count(compact, a, destinations, latencyLimits, LatencyTraceCounter.Mode.SPARSE),
+                is(new long[] {2, 3, 2}));
+        assertThat(LatencyTraceCounter.count(compact, a, destinations, latencyLimits, LatencyTraceCounter.Mode.AUTO),
+                is(new long[] {2, 3, 2}));
+    }
+
+    @Test
+    void test_countTracesWithinLatencyThroughZeroLatencyConnections() {
+        Graph zeroLatencyGraph = graphService.parseServiceGraph("AB0, BC4, CA3");
+        // A-B-C and its repeats around the cycle, 4 + 7k below 30
+        assertThat(graphService.getPossibleTracesLessThanGivenLatency(zeroLatencyGraph, "A", "C", 30), is(4L));
+        // the trace A-B has latency 0 and is not counted
+        assertThat(graphService.getPossibleTracesLessThanGivenLatency(zeroLatencyGraph, "A", "B", 30), is(4L));
+
+        // latency 0 connections only lead to higher service numbers, so they form no cycle
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            int services = 3 + random.nextInt(5);
+            StringBuilder input = new StringBuilder();
+            for (int edge = 0; edge < services * 2; edge++) {
+                int from = random.nextInt(services), to = random.nextInt(services);
+                int latency = from < to && random.nextBoolean() ? 0 : 1 + random.nextInt(9);
+                if (edge > 0) input.append(", ");
+                input.append('s').append(from).append("->s").append(to).append(':').append(latency);
+            }
+            CompactGraph compact = graphService.parseServiceGraph(input.toString()).compact();
+            int source = random.nextInt(compact.nodeCount());
+            int destination = random.nextInt(compact.nodeCount());
+            int limit = 1 + random.nextInt(30);
+
+            long expected = countTracesWithinLatency(compact, source, destination, limit, 0);
+            for (LatencyTraceCounter.Mode mode : LatencyTraceCounter.Mode.values()) {
+                assertThat(LatencyTraceCounter.count(compact, source, new int[] {destination}, new int[] {limit}, mode)[0],
+                        is(expected));
+            }
+        }
+
+        Graph zeroLatencyCycle = graphService.parseServiceGraph("AB0, BA0, BC1");
+        assertThrows(IllegalStateException.class,
+                () -> graphService.getPossibleTracesLessThanGivenLatency(zeroLatencyCycle, "A", "C", 30));
+    }
+
+    @Test
+    void test_getAllPairsTraceCountsByMatrixExponentiation() {
+        CompactGraph compact = graph.compact();
+        TraceCountMatrix exactHops = graphService.getAllPairsTracesEqualToGivenHops(graph, 7);
+        TraceCountMatrix maxHops = graphService.getAllPairsTracesWithGivenMaxKHops(graph, 7);
+
+        for (int source = 0; source < compact.nodeCount(); source++) {
+            long[] expectedCounts = new long[compact.nodeCount()];
+            for (int hops = 1; hops <= 7; hops++) {
+                long[] countsWithHops = HopTraceCounter.countsWithExactHops(compact, source, hops);
+                for (int dest = 0; dest < compact.nodeCount(); dest++) expectedCounts[dest] += countsWithHops[dest];
+
+                if (hops == 7) {
+                    for (int dest = 0; dest < compact.nodeCount(); dest++) {
+                        assertThat(countsWithHops[dest], is(exactHops.count(source, dest)));
+                    }
+                }
+            }
+            for (int dest = 0; dest < compact.nodeCount(); dest++) {
+                assertThat(expectedCounts[dest], is(maxHops.count(source, dest)));
+            }
+        }
+    }
+
+    @Test
+    void test_getAllPairsTraceCountsModuloPrimeForLargeHops() {
+        Graph fullMesh = graphService.parseServiceGraph(
+                "AB1, AC1, AD1, AE1, BA1, BC1, BD1, BE1, CA1, CB1, CD1, CE1, DA1, DB1, DC1, DE1, EA1, EB1, EC1, ED1");
+        int a = fullMesh.compact().serviceId("A");
+        long prime = 1_000_000_007L;
+
+        // closed walks of length k in K5: (4^k + 4 * (-1)^k) / 5
+        long expected = BigInteger.valueOf(4).pow(5000).add(BigInteger.valueOf(4))
+                .divide(BigInteger.valueOf(5)).mod(BigInteger.valueOf(prime)).longValue();
+
+        assertThat(expected, is(graphService.getAllPairsTracesEqualToGivenHops(fullMesh, 5000, prime).count(a, a)));
+    }
+
+    @Test
+    void test_getShortestTraceFromAnySourceIncludingCycles() {
+        assertThat(9, allOf(is(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, "C", "C")),
+                is(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, "B", "B"))));
+        assertThat(13, is(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, "D", "B")));
+        // nothing leads back to A
+        assertThat(ShortestTraceSearch.NO_TRACE, is(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, "A", "A")));
+    }
+
+    @Test
+    void test_getShortestTraceMatchesFloydWarshallOnRandomGraph() {
+        CompactGraph compact = graphService.parseServiceGraph(randomGraphInput("s", 60, 240, 42)).compact();
+        int n = compact.nodeCount();
+
+        // shortest traces of at least one hop, so the diagonal holds the shortest cycles
+        long[][] expected = new long[n][n];
+        for (long[] row : expected) Arrays.fill(row, Long.MAX_VALUE / 4);
+        for (int node = 0; node < n; node++) {
+            for (int edge = compact.offsets()[node]; edge < compact.offsets()[node + 1]; edge++) {
+                expected[node][compact.targets()[edge]] = compact.latencies()[edge];
+            }
+        }
+        for (int k = 0; k < n; k++)
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < n; j++)
+                    expected[i][j] = Math.min(expected[i][j], expected[i][k] + expected[k][j]);
+
+        int[] latencies = new int[n];
+        for (int source = 0; source < n; source++) {
+            ShortestTraceSearch.forCurrentThread().shortestTraces(compact, source, latencies);
+            for (int dest = 0; dest < n; dest++) {
+                long expectedLatency = expected[source][dest] >= Long.MAX_VALUE / 4 ? ShortestTraceSearch.NO_TRACE : expected[source][dest];
+                assertThat((long) latencies[dest], is(expectedLatency));
+                assertThat(ShortestTraceSearch.forCurrentThread().shortestTrace(compact, source, dest), is(latencies[dest]));
+            }
+        }
+    }
+
+    @Test
+    void test_shortestLatencyIndexMatchesOnDemandSearch() {
+        // a sparse graph is indexed by repeated Dijkstra, a dense one by blocked Floyd-Warshall
+        for (int[] shape : new int[][] {{200, 600}, {100, 3000}}) {
+            Graph randomGraph = graphService.parseServiceGraph(randomGraphInput("s", shape[0], shape[1], 7));
+            CompactGraph compact = randomGraph.compact();
+
+            assertThat(true, is(graphService.buildShortestLatencyIndex(randomGraph, 1L << 20)));
+            ShortestLatencyIndex index = compact.shortestLatencyIndex();
+
+            for (int source = 0; source < compact.nodeCount(); source++) {
+                for (int dest = 0; dest < compact.nodeCount(); dest++) {
+                    assertThat(ShortestTraceSearch.forCurrentThread().shortestTrace(compact, source, dest),
+                            is(index.latency(source, dest)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_landmarkGuidedSearchMatchesFullSearch() {
+        // two parts with connections only from the first into the second
+        String input = randomGraphInput("s", 300, 900, 11) + ", " + randomGraphInput("t", 50, 150, 12) + ", s1->t1:5";
+        CompactGraph plain = graphService.parseServiceGraph(input).compact();
+        Graph randomGraph = graphService.parseServiceGraph(input);
+        CompactGraph compact = randomGraph.compact();
+        int n = compact.nodeCount();
+        graphService.buildLandmarkIndex(randomGraph, 6);
+        assertThat(compact.landmarkIndex().landmarkCount(), is(6));
+        assertThat(plain.landmarkIndex(), is(nullValue()));
+
+        ShortestTraceSearch search = ShortestTraceSearch.forCurrentThread();
+        int[][] latencies = new int[n][n];
+        for (int source = 0; source < n; source++) search.shortestTraces(plain, source, latencies[source]);
+
+        long before = GraphMetrics.counters().get("shortest_trace.nodes_expanded");
+        for (int source = 0; source < n; source++) {
+            for (int dest = 0; dest < n; dest++) {
+                assertThat(search.shortestTrace(plain, source, dest), is(latencies[source][dest]));
+            }
+        }
+        long plainExpanded = GraphMetrics.counters().get("shortest_trace.nodes_expanded") - before;
+
+        before = GraphMetrics.counters().get("shortest_trace.nodes_expanded");
+        for (int source = 0; source < n; source++) {
+            for (int dest = 0; dest < n; dest++) {
+                assertThat(search.shortestTrace(compact, source, dest), is(latencies[source][dest]));
+            }
+        }
+        long guidedExpanded = GraphMetrics.counters().get("shortest_trace.nodes_expanded") - before;
+
+        for (int source = 0; source < n; source++) {
+            for (int dest = 0; dest < n; dest++) {
+                if (latencies[source][dest] != ShortestTraceSearch.NO_TRACE && source != dest) {
+                    assertThat(compact.landmarkIndex().lowerBound(source, dest) <= latencies[source][dest], is(true));
+                }
+            }
+        }
+        // the landmarks steer both sides towards each other, so fewer services are settled
+        assertThat(plainExpanded + " services settled without landmarks, " + guidedExpanded + " with",
+                guidedExpanded < plainExpanded, is(true));
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(randomGraph, "t1", "s1"), is(ShortestTraceSearch.NO_TRACE));
+    }
+
+    @Test
+    void test_shortestLatencyIndexFallsBackToSearchOverMemoryBudget() {
+        Graph indexedGraph = graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+
+        assertThat(false, is(graphService.buildShortestLatencyIndex(indexedGraph, 16)));
+        assertThat(9, is(graphService.getShortestTraceByLatencyBetweenGivenNodes(indexedGraph, "B", "B")));
+    }
+
+    // traces with a total latency above 0 and below the limit, by depth-first search
+    private static long countTracesWithinLatency(CompactGraph graph, int node, int destination, int limit, int latency) {
+        long count = node == destination && latency > 0 ? 1 : 0;
+        for (int edge = graph.offsets()[node]; edge < graph.offsets()[node + 1]; edge++) {
+            int next = latency + graph.latencies()[edge];
+            if (next < limit) count += countTracesWithinLatency(graph, graph.targets()[edge], destination, limit, next);
+        }
+        return count;
+    }
+
+    private static String randomGraphInput(String prefix, int services, int connections, long seed) {
+        Random random = new Random(seed);
+        StringBuilder input = new StringBuilder();
+        for (int edge = 0; edge < connections; edge++) {
+            if (edge > 0) input.append(", ");
+            input.append(prefix).append(random.nextInt(services)).append("->").append(prefix).append(random.nextInt(services))
+                    .append(':').append(1 + random.nextInt(20));
+        }
+        return input.toString();
+    }
 }
@@ -0,0 +1,112 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.koushik.distributed.tracing.helper.HelperUtil;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.GraphSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for binary graph snapshots.
+ */
+class TestGraphSnapshot {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_snapshotRoundTrip() throws IOException {
+        GraphService graphService = new GraphService();
+        Path file = tempDir.resolve("graph.dtg");
+        GraphSnapshot.write(graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7").compact(), file);
+
+        assertThat(GraphSnapshot.isSnapshot(file), is(true));
+        assertThat(HelperUtil.isValidPath(file.toString()), is(true));
+
+        Graph graph = new Graph(GraphSnapshot.read(file));
+        assertThat(graphService.getTotalAverageLatencyOfGivenTraces(graph, "A-E-B-C-D"), is("22"));
+        assertThat(graphService.findNoOfTracesWithGivenMaxKHops(graph, "C", "C", 3), is(2L));
+        assertThat(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, "B", "B"), is(9));
+    }
+
+    @Test
+    void test_largeSnapshotKeepsArrays() throws IOException {
+        // more connections than fit into one write buffer, with service names of different lengths
+        Random random = new Random(5);
+        ServiceDictionary services = new ServiceDictionary();
+        for (int i = 0; i < 5_000; i++) services.intern("svc_" + i + (i % 7 == 0 ? "_v1.2" : ""));
+        CompactGraph.Builder builder = new CompactGraph.Builder(services);
+        for (int i = 0; i < 400_000; i++) builder.addEdge(random.nextInt(5_000), random.nextInt(5_000), 1 + random.nextInt(100));
+        CompactGraph expected = builder.build();
+
+        Path file = tempDir.resolve("large.dtg");
+        GraphSnapshot.write(expected, file);
+        CompactGraph loaded = GraphSnapshot.read(file);
+
+        assertArrayEquals(expected.offsets(), loaded.offsets());
+        assertArrayEquals(expected.targets(), loaded.targets());
+        assertArrayEquals(expected.latencies(), loaded.latencies());
+        assertThat(loaded.services().names(), is(expected.services().names()));
+        assertThat(loaded.serviceId("svc_14_v1.2"), is(14));
+
+        // windows far smaller than the file, of a size that splits values and names between them
+        CompactGraph windowed = GraphSnapshot.read(file, 4_099);
+        assertArrayEquals(expected.targets(), windowed.targets());
+        assertArrayEquals(expected.latencies(), windowed.latencies());
+        assertThat(windowed.services().names(), is(expected.services().names()));
+    }
+
+    @Test
+    void test_corruptSnapshotIsRejected() throws IOException {
+        Path file = tempDir.resolve("graph.dtg");
+        GraphSnapshot.write(new GraphService().parseServiceGraph("AB5, BC4").compact(), file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[20] ^= 1;
+        Files.write(file, bytes);
+        IOException checksum = assertThrows(IOException.class, () -> GraphSnapshot.read(file));
+        assertThat(checksum.getMessage(), containsString("checksum mismatch"));
+
+        Path text = tempDir.resolve("input.txt");
+        Files.writeString(text, "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+        assertThat(GraphSnapshot.isSnapshot(text), is(false));
+        IOException notSnapshot = assertThrows(IOException.class, () -> GraphSnapshot.read(text));
+        assertThat(notSnapshot.getMessage(), containsString("not a graph snapshot"));
+
+        // checksums match, but the contents could never have come from a parsed topology
+        Path negative = tempDir.resolve("negative.dtg");
+        writeSnapshot(negative, -5, "A", "B");
+        IOException negativeLatency = assertThrows(IOException.class, () -> GraphSnapshot.read(negative));
+        assertThat(negativeLatency.getMessage(), containsString("Negative latency -5"));
+
+        Path badName = tempDir.resolve("bad-name.dtg");
+        writeSnapshot(badName, 5, "A", "auth-service");
+        IOException invalidName = assertThrows(IOException.class, () -> GraphSnapshot.read(badName));
+        assertThat(invalidName.getMessage(), containsString("invalid service name auth-service"));
+    }
+
+    // two services with one connection of the given latency between them
+    private static void writeSnapshot(Path file, int latency, String source, String dest) throws IOException {
+        try (GraphSnapshot.Writer writer = new GraphSnapshot.Writer(file, 2, 1)) {
+            writer.putInts(new int[] {0, 1, 1}, 0, 3);
+            writer.putInt(1);
+            writer.putInt(latency);
+            writer.putServiceName(source);
+            writer.putServiceName(dest);
+            writer.finish();
+        }
+    }
+}
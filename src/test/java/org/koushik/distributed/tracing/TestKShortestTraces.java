@@ -0,0 +1,98 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+import org.koushik.distributed.tracing.model.TracePath;
+import org.koushik.distributed.tracing.model.TraceQuery;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.KShortestTraces;
+import org.koushik.distributed.tracing.service.QueryPlanner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit test for the k shortest simple traces.
+ */
+class TestKShortestTraces {
+    final GraphService graphService = new GraphService();
+    final Graph graph = graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+
+    @Test
+    void test_tracesComeInLatencyOrder() {
+        List<String> traces = new ArrayList<>();
+        graphService.getShortestTracesByLatency(graph, "A", "C").forEachRemaining(trace -> traces.add(trace.toString()));
+        assertThat(traces, is(List.of("A-B-C:9", "A-D-C:13", "A-E-B-C:14", "A-D-E-B-C:18")));
+
+        assertThat(graphService.getShortestTracesByLatency(graph, "B", "B").hasNext(), is(false));
+        assertThat(graphService.getShortestTracesByLatency(graph, "A", "X").hasNext(), is(false));
+
+        List<String> answers = new QueryPlanner(graphService).execute(graph, List.of(
+                new TraceQuery.ShortestTraces("A", "C", 2),
+                new TraceQuery.ShortestTraces("C", "A", 2),
+                new TraceQuery.ShortestTraces("A", "C", 0)));
+        assertThat(answers, is(List.of("A-B-C:9, A-D-C:13", "NO SUCH TRACE", "-1")));
+    }
+
+    @Test
+    void test_matchesAllSimpleTracesOnRandomGraphs() {
+        Random random = new Random(21);
+        for (int round = 0; round < 30; round++) {
+            int nodeCount = 4 + random.nextInt(6);
+            ServiceDictionary services = new ServiceDictionary();
+            for (int node = 0; node < nodeCount; node++) services.intern("S" + node);
+            CompactGraph.Builder builder = new CompactGraph.Builder(services);
+            for (int edge = 0; edge < nodeCount * 3; edge++) {
+                builder.addEdge(random.nextInt(nodeCount), random.nextInt(nodeCount), 1 + random.nextInt(9));
+            }
+            CompactGraph compact = builder.build();
+            int source = random.nextInt(nodeCount);
+            int destination = random.nextInt(nodeCount);
+
+            List<Integer> expected = new ArrayList<>();
+            if (source != destination) {
+                boolean[] visited = new boolean[nodeCount];
+                visited[source] = true;
+                collectLatencies(compact, source, destination, 0, visited, expected);
+            }
+            expected.sort(null);
+
+            List<Integer> latencies = new ArrayList<>();
+            Set<List<String>> paths = new HashSet<>();
+            Iterator<TracePath> traces = new KShortestTraces(compact, source, destination);
+            while (traces.hasNext()) {
+                TracePath trace = traces.next();
+                latencies.add(trace.latency());
+                assertThat(new HashSet<>(trace.services()).size(), is(trace.services().size()));
+                assertThat(paths.add(trace.services()), is(true));
+                assertThat(graphService.getTotalAverageLatencyOfGivenTraces(new Graph(compact), trace.trace()),
+                        is(String.valueOf(trace.latency())));
+            }
+            assertThat(latencies, is(expected));
+        }
+    }
+
+    // latencies of every simple trace by depth-first search
+    private static void collectLatencies(CompactGraph graph, int node, int destination, int latency,
+                                         boolean[] visited, List<Integer> latencies) {
+        for (int edge = graph.offsets()[node]; edge < graph.offsets()[node + 1]; edge++) {
+            int target = graph.targets()[edge];
+            if (target == destination) {
+                latencies.add(latency + graph.latencies()[edge]);
+            } else if (!visited[target]) {
+                visited[target] = true;
+                collectLatencies(graph, target, destination, latency + graph.latencies()[edge], visited, latencies);
+                visited[target] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.LiveGraph;
+import org.koushik.distributed.tracing.service.DynamicShortestTraces;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.ShortestTraceSearch;
+import org.koushik.distributed.tracing.service.SpanIngestor;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for live graph updates and incrementally repaired shortest traces.
+ */
+class TestLiveGraph {
+
+    @Test
+    void test_connectionUpdates() {
+        LiveGraph graph = new LiveGraph();
+
+        assertThat(graph.setLatency("A", "B", 5), is(LiveGraph.NO_CONNECTION));
+        assertThat(graph.setLatency("A", "B", 7), is(5));
+        assertThat(graph.setLatency("B", "C", 4), is(LiveGraph.NO_CONNECTION));
+        assertThat(graph.connectionCount(), is(2));
+
+        assertThat(graph.removeConnection("A", "B"), is(7));
+        assertThat(graph.removeConnection("A", "B"), is(LiveGraph.NO_CONNECTION));
+        assertThat(graph.removeConnection("A", "X"), is(LiveGraph.NO_CONNECTION));
+        assertThat(graph.connectionCount(), is(1));
+
+        CompactGraph snapshot = graph.snapshot();
+        assertThat(snapshot.edgeCount(), is(1));
+        assertThat(snapshot.latency(snapshot.serviceId("B"), snapshot.serviceId("C")), is(4));
+
+        // services registered after the snapshot stay out of it
+        graph.setLatency("C", "D", 3);
+        assertThat(snapshot.serviceId("D"), is(-1));
+        assertThat(snapshot.nodeCount(), is(3));
+        assertThrows(IllegalArgumentException.class, () -> graph.setLatency("A", "B", -1));
+    }
+
+    @Test
+    void test_shortestTracesFollowUpdates() {
+        LiveGraph graph = new LiveGraph();
+        for (String connection : "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7".split(", ")) {
+            graph.setLatency(connection.substring(0, 1), connection.substring(1, 2),
+                    Integer.parseInt(connection.substring(2)));
+        }
+        DynamicShortestTraces shortestTraces = new DynamicShortestTraces(graph, 4);
+
+        assertThat(shortestTraces.shortestTrace("A", "C"), is(9));
+        assertThat(shortestTraces.shortestTrace("B", "B"), is(9));
+
+        graph.setLatency("A", "C", 2);
+        assertThat(shortestTraces.shortestTrace("A", "C"), is(2));
+        assertThat(shortestTraces.shortestTrace("A", "E"), is(4));
+
+        graph.removeConnection("A", "C");
+        assertThat(shortestTraces.shortestTrace("A", "C"), is(9));
+
+        graph.removeConnection("E", "B");
+        assertThat(shortestTraces.shortestTrace("B", "B"), is(DynamicShortestTraces.NO_TRACE));
+        assertThat(shortestTraces.shortestTrace("A", "X"), is(DynamicShortestTraces.NO_TRACE));
+    }
+
+    @Test
+    void test_shortestTracesFollowZeroLatencyConnections() {
+        LiveGraph graph = new LiveGraph();
+        graph.setLatency("A", "B", 5);
+        graph.setLatency("B", "C", 4);
+        graph.setLatency("C", "D", 3);
+        DynamicShortestTraces shortestTraces = new DynamicShortestTraces(graph, 4);
+        assertThat(shortestTraces.shortestTrace("A", "D"), is(12));
+
+        // a free connection shortens the trace, raising it again repairs the subtree below it
+        graph.setLatency("A", "C", 0);
+        assertThat(shortestTraces.shortestTrace("A", "C"), is(0));
+        assertThat(shortestTraces.shortestTrace("A", "D"), is(3));
+        graph.setLatency("D", "A", 0);
+        assertThat(shortestTraces.shortestTrace("A", "A"), is(3));
+
+        graph.setLatency("A", "C", 20);
+        assertThat(shortestTraces.shortestTrace("A", "D"), is(12));
+        assertThat(shortestTraces.shortestTrace("A", "A"), is(12));
+        assertThat(graph.snapshot().minLatency(), is(0));
+    }
+
+    @Test
+    void test_liveTopologyFedBySpans() throws Exception {
+        // an existing topology made live, its latencies then come from the spans of the running system
+        LiveGraph graph = LiveGraph.from(new GraphService()
+                .parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7").compact());
+        assertThat(graph.nodeCount(), is(5));
+        assertThat(graph.connectionCount(), is(9));
+        DynamicShortestTraces shortestTraces = new DynamicShortestTraces(graph, 4);
+        assertThat(shortestTraces.shortestTrace("A", "C"), is(9));
+
+        SpanIngestor ingestor = new SpanIngestor(16, 4).feed(graph).start();
+        try (ingestor) {
+            ingestor.ingest(new StringReader("t1,1,-,A,30\nt1,2,1,D,1\nt1,3,2,C,1\nt2,1,-,A,30\nt2,2,1,B,20"));
+        }
+        // A-D and D-C dropped to 1, A-B went up to 20 so B is now reached through A-D-C-E-B
+        assertThat(shortestTraces.shortestTrace("A", "C"), is(2));
+        assertThat(shortestTraces.shortestTrace("A", "B"), is(7));
+        assertThat(graph.connectionCount(), is(9));
+    }
+
+    @Test
+    void test_incrementalRepairMatchesFullSearch() {
+        Random random = new Random(17);
+        int services = 30;
+        LiveGraph graph = new LiveGraph();
+        DynamicShortestTraces shortestTraces = new DynamicShortestTraces(graph, 8);
+        ShortestTraceSearch search = ShortestTraceSearch.forCurrentThread();
+
+        for (int step = 0; step < 2_000; step++) {
+            String source = "s" + random.nextInt(services);
+            String destination = "s" + random.nextInt(services);
+            if (random.nextInt(4) == 0) {
+                graph.removeConnection(source, destination);
+            } else {
+                graph.setLatency(source, destination, 1 + random.nextInt(20));
+            }
+
+            if (step % 10 == 0) {
+                CompactGraph snapshot = graph.snapshot();
+                for (int query = 0; query < 10; query++) {
+                    // a few sources only, so their cached trees are repaired instead of rebuilt
+                    String from = "s" + random.nextInt(6);
+                    String to = "s" + random.nextInt(services);
+                    int fromId = snapshot.serviceId(from);
+                    int toId = snapshot.serviceId(to);
+                    int expected = fromId < 0 || toId < 0 ? ShortestTraceSearch.NO_TRACE
+                            : search.shortestTrace(snapshot, fromId, toId);
+
+                    assertThat(from + "->" + to + " at step " + step,
+                            shortestTraces.shortestTrace(from, to), is(expected));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.InvalidConnectionException;
+import org.koushik.distributed.tracing.service.MappedTopologyReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for the memory-mapped topology file reader.
+ */
+class TestMappedTopologyReader {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_readLinesSpanningSeveralMappedWindows() throws IOException {
+        Path input = Files.writeString(tempDir.resolve("input.txt"),
+                "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7\r\ncheckout->payments:12, payments->ledger:30");
+
+        List<Graph> graphs = new ArrayList<>();
+        // a tiny window makes both lines and most tokens cross a window boundary
+        new MappedTopologyReader(input, 7).read((lineNumber, graph) -> graphs.add(graph));
+
+        GraphService graphService = new GraphService();
+        assertThat(2, is(graphs.size()));
+        assertThat("13", is(graphService.getTotalAverageLatencyOfGivenTraces(graphs.get(0), "A-D-C")));
+        assertThat("42", is(graphService.getTotalAverageLatencyOfGivenTraces(graphs.get(1), "checkout-payments-ledger")));
+    }
+
+    @Test
+    void test_readLinesAsSlicesAndParseThemIndependently() throws IOException {
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "AB5, BC4\nAB1\nAB5, BC4, CD8, DC8, DE6\n");
+
+        List<Graph> graphs = new ArrayList<>();
+        new MappedTopologyReader(input, 7).readLines((lineNumber, line) ->
+                graphs.add(MappedTopologyReader.parseLine(lineNumber, line)));
+
+        assertThat(3, is(graphs.size()));
+        assertThat(4, is(graphs.get(0).getLatency("B", "C")));
+        assertThat(1, is(graphs.get(1).getLatency("A", "B")));
+        assertThat(6, is(graphs.get(2).getLatency("D", "E")));
+    }
+
+    @Test
+    void test_readFirstGraphSkipsBlankLinesAndStopsAfterIt() throws IOException {
+        // the invalid line after the first graph is never parsed
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "\n \t\r\nAB5, BC4, CD8\nAB5, B4C\n");
+        Graph graph = new MappedTopologyReader(input, 5).readFirstGraph();
+        assertThat(graph.getLatency("C", "D"), is(8));
+
+        Path blank = Files.writeString(tempDir.resolve("blank.txt"), "\n  \n ");
+        assertThat(new MappedTopologyReader(blank).readFirstGraph(), is(nullValue()));
+    }
+
+    @Test
+    void test_readInvalidLineReportsLineAndColumn() throws IOException {
+        Path input = Files.writeString(tempDir.resolve("input.txt"), "AB5, BC4\nAB5, B4C\n");
+
+        InvalidConnectionException ex = assertThrows(InvalidConnectionException.class,
+                () -> new MappedTopologyReader(input).read((lineNumber, graph) -> {}));
+
+        assertThat(2L, is(ex.getLine()));
+        assertThat(6L, is(ex.getColumn()));
+    }
+}
@@ -0,0 +1,78 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.TraceQuery;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.QueryParser;
+import org.koushik.distributed.tracing.service.QueryPlanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for the batch query planner.
+ */
+class TestQueryPlanner {
+    static GraphService graphService;
+    static QueryPlanner queryPlanner;
+    static Graph graph;
+
+    @BeforeAll
+    static void setupClass() {
+        graphService = new GraphService();
+        queryPlanner = new QueryPlanner(graphService);
+        graph = graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+    }
+
+    @Test
+    void test_executeQueryFile() {
+        List<TraceQuery> queries = QueryParser.parse(List.of(
+                "# the ten default questions",
+                "latency A-B-C", "latency A-D", "latency A-D-C", "latency A-E-B-C-D", "latency A-E-D",
+                "",
+                "max-hops C C 3", "exact-hops A C 4", "shortest A C", "shortest B B", "within-latency C C 30"));
+
+        assertThat(queryPlanner.execute(graph, queries),
+                contains("9", "5", "13", "22", "NO SUCH TRACE", "2", "3", "9", "9", "7"));
+    }
+
+    @Test
+    void test_sharedWorkAnswersSameAsSingleQueries() {
+        String[] services = {"A", "B", "C", "D", "E", "X", ""};
+        List<TraceQuery> queries = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+
+        for (String source : services) {
+            for (String destination : services) {
+                for (int bound = 0; bound < 6; bound++) {
+                    queries.add(new TraceQuery.MaxHops(source, destination, bound));
+                    expected.add(String.valueOf(graphService.findNoOfTracesWithGivenMaxKHops(graph, source, destination, bound)));
+                    queries.add(new TraceQuery.ExactHops(source, destination, bound));
+                    expected.add(String.valueOf(graphService.findNoOfTracesEqualToGivenHops(graph, source, destination, bound)));
+                    queries.add(new TraceQuery.WithinLatency(source, destination, bound * 7 - 1));
+                    expected.add(String.valueOf(graphService.getPossibleTracesLessThanGivenLatency(graph, source, destination, bound * 7 - 1)));
+                }
+                queries.add(new TraceQuery.ShortestTrace(source, destination));
+                expected.add(String.valueOf(graphService.getShortestTraceByLatencyBetweenGivenNodes(graph, source, destination)));
+            }
+        }
+
+        assertThat(queryPlanner.execute(graph, queries), is(expected));
+    }
+
+    @Test
+    void test_parseInvalidQueryReportsLine() {
+        Exception ex = assertThrows(IllegalArgumentException.class,
+                () -> QueryParser.parse(List.of("latency A-B", "shortest A")));
+
+        assertThat(ex.getMessage(), startsWith("Bad query at line 2"));
+    }
+}
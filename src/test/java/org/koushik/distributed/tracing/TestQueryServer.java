@@ -0,0 +1,117 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.controller.QueryServer;
+import org.koushik.distributed.tracing.service.GraphRepository;
+import org.koushik.distributed.tracing.service.GraphService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Unit test for the HTTP query server, the same requests work with curl against a running server.
+ */
+class TestQueryServer {
+    static QueryServer server;
+    static HttpClient client;
+
+    @BeforeAll
+    static void setupClass() throws IOException {
+        GraphRepository repository = new GraphRepository(
+                new GraphService().parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7"));
+        server = new QueryServer(repository, 0).start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterAll
+    static void tearDownClass() {
+        server.close();
+    }
+
+    @Test
+    void test_queryEndpoints() throws Exception {
+        // no authentication, so nothing outside this host may reach the server unless asked for
+        assertThat(server.bindAddress().isLoopbackAddress(), is(true));
+        assertThat(answer(get("/latency?trace=A-B-C")), is("9"));
+        assertThat(answer(get("/latency?trace=A-E-D")), is("\"NO SUCH TRACE\""));
+        assertThat(answer(get("/traces/max-hops?source=C&destination=C&hops=3")), is("2"));
+        assertThat(answer(get("/traces/exact-hops?source=A&destination=C&hops=4")), is("3"));
+        assertThat(answer(get("/shortest?source=B&destination=B")), is("9"));
+        assertThat(answer(get("/traces/within-latency?source=C&destination=C&limit=30")), is("7"));
+        assertThat(answer(get("/percentiles?trace=A-B-C")), is("\"p50=9 p99=9\""));
+
+        HttpResponse<String> missing = get("/shortest?source=A");
+        assertThat(missing.statusCode(), is(400));
+        assertThat(missing.body(), is("{\"error\":\"Missing parameter 'destination'\"}"));
+        assertThat(get("/traces/max-hops?source=C&destination=C&hops=x").statusCode(), is(400));
+        assertThat(get("/unknown").statusCode(), is(404));
+        assertThat(send(HttpRequest.newBuilder(uri("/latency?trace=A-B")).DELETE()).statusCode(), is(405));
+
+        HttpResponse<String> metrics = get("/metrics");
+        assertThat(metrics.statusCode(), is(200));
+        assertThat(metrics.body(), containsString("query_batch calls="));
+    }
+
+    @Test
+    void test_batchAndTopologyUpload() throws Exception {
+        String batch = "latency A-B-C\nmax-hops C C 3\nshortest A C\n";
+        HttpResponse<String> answers = send(HttpRequest.newBuilder(uri("/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch)));
+        assertThat(answers.statusCode(), is(200));
+        assertThat(answers.body(), startsWith("{\"version\":"));
+        assertThat(answers.body().substring(answers.body().indexOf(",\"answers\"")), is(",\"answers\":[9,2,9]}"));
+
+        HttpResponse<String> badBatch = send(HttpRequest.newBuilder(uri("/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("fastest A C")));
+        assertThat(badBatch.statusCode(), is(400));
+        assertThat(badBatch.body(), is("{\"error\":\"Bad query at line 1: unknown query 'fastest'\"}"));
+
+        // a new topology is a new version, served to all following queries
+        long before = versionOf(get("/topology").body());
+        HttpResponse<String> upload = send(HttpRequest.newBuilder(uri("/topology"))
+                .PUT(HttpRequest.BodyPublishers.ofString("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7, AC1")));
+        assertThat(upload.body(), is("{\"version\":" + (before + 1) + ",\"services\":5,\"connections\":10}"));
+        assertThat(get("/shortest?source=A&destination=C").body(), is("{\"version\":" + (before + 1) + ",\"answer\":1}"));
+
+        HttpResponse<String> badUpload = send(HttpRequest.newBuilder(uri("/topology"))
+                .PUT(HttpRequest.BodyPublishers.ofString("AB5, B")));
+        assertThat(badUpload.statusCode(), is(400));
+        assertThat(versionOf(get("/topology").body()), is(before + 1));
+
+        // restore the topology the other test expects
+        send(HttpRequest.newBuilder(uri("/topology"))
+                .PUT(HttpRequest.BodyPublishers.ofString("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7")));
+    }
+
+    // the answer part of {"version":n,"answer":...}, versions depend on the order tests run in
+    private static String answer(HttpResponse<String> response) {
+        String json = response.body();
+        return json.substring(json.indexOf(",\"answer\":") + ",\"answer\":".length(), json.length() - 1);
+    }
+
+    private static long versionOf(String json) {
+        return Long.parseLong(json.substring("{\"version\":".length(), json.indexOf(',')));
+    }
+
+    private static HttpResponse<String> get(String path) throws Exception {
+        return send(HttpRequest.newBuilder(uri(path)).GET());
+    }
+
+    private static HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://localhost:" + server.port() + path);
+    }
+}
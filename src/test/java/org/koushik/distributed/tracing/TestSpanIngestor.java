@@ -0,0 +1,140 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.LatencySketch;
+import org.koushik.distributed.tracing.model.Span;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.SpanIngestor;
+
+import java.io.StringReader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for building the service graph from spans.
+ */
+class TestSpanIngestor {
+
+    @Test
+    void test_joinSpansIntoConnections() throws Exception {
+        String spans = String.join("\n",
+                "# traceId,spanId,parentSpanId,service,duration",
+                "t1,1,-,A,30",
+                "t1,2,1,B,10",
+                "t1,4,3,C,3",          // child before its parent
+                "t1,3,2,B,6",          // internal span of B, not a connection
+                "t2,1,,A,40",
+                "t2,2,1,B,20",
+                "t2,3,1,C,bad",
+                "t2,4,1,auth-service,7", // not a valid service name
+                "t2,3,1");
+
+        SpanIngestor ingestor = new SpanIngestor(16, 1).start();
+        try (ingestor) {
+            assertThat(ingestor.ingest(new StringReader(spans)), is(10L));
+        }
+
+        assertThat(ingestor.spans(), is(6L));
+        assertThat(ingestor.calls(), is(4L));
+        assertThat(ingestor.rejectedLines(), is(3L));
+        assertThat(ingestor.evictedSpans(), is(0L));
+        assertThat(ingestor.droppedChildren(), is(0L));
+        assertThat(ingestor.describeConnections(), contains(
+                "A->B calls=2 mean=15.0 p50=10 p90=20 p99=20 max=20",
+                "B->C calls=1 mean=3.0 p50=3 p90=3 p99=3 max=3"));
+
+        Graph graph = ingestor.snapshot();
+        assertThat(graph.getLatency("A", "B"), is(15));
+        assertThat(new GraphService().getShortestTraceByLatencyBetweenGivenNodes(graph, "A", "C"), is(18));
+    }
+
+    @Test
+    void test_windowEvictsUnmatchedSpans() throws Exception {
+        SpanIngestor ingestor = new SpanIngestor(4, 2).start();
+        try (ingestor) {
+            for (int i = 0; i < 100; i++) {
+                // children whose parents never arrive
+                ingestor.submit(new Span("t" + i, "2", "1", "B", 5));
+            }
+            ingestor.submit(new Span("late", "1", null, "A", 5));
+            ingestor.submit(new Span("late", "2", "1", "B", 5));
+        }
+
+        assertThat(ingestor.droppedChildren(), is(96L));
+        assertThat(ingestor.evictedSpans(), is(98L));
+        assertThat(ingestor.calls(), is(1L));
+        assertThat(ingestor.snapshot().getLatency("A", "B"), is(5));
+    }
+
+    @Test
+    void test_aggregatorFailureIsRethrown() throws Exception {
+        SpanIngestor ingestor = new SpanIngestor(16, 2).start();
+        ingestor.submit(new Span("t1", "1", null, "A", 5));
+        // a span without a service, parseSpan never builds one, fails the aggregator when joined
+        ingestor.submit(new Span("t1", "2", "1", null, 5));
+
+        // the queue fills up behind the dead aggregator, submit fails instead of blocking
+        IllegalStateException failed = assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 100; i++) ingestor.submit(new Span("t2", "" + i, null, "A", 5));
+        });
+        assertThat(failed.getCause(), instanceOf(NullPointerException.class));
+        assertThrows(IllegalStateException.class, ingestor::close);
+    }
+
+    @Test
+    void test_latencySketchPercentiles() {
+        LatencySketch sketch = new LatencySketch();
+        for (int latency = 1; latency <= 100_000; latency++) sketch.record(latency);
+
+        assertThat(sketch.count(), is(100_000L));
+        assertThat(sketch.mean(), closeTo(50_000.5, 1e-9));
+        assertThat((double) sketch.percentile(0.5), closeTo(50_000, 50_000 * 0.04));
+        assertThat((double) sketch.percentile(0.99), closeTo(99_000, 99_000 * 0.04));
+        assertThat(sketch.percentile(1), is(100_000L));
+
+        // merging two halves gives the same sketch as recording everything into one
+        LatencySketch low = new LatencySketch();
+        LatencySketch high = new LatencySketch();
+        for (int latency = 1; latency <= 100_000; latency++) (latency <= 50_000 ? low : high).record(latency);
+        low.merge(high);
+        assertThat(low.percentile(0.5), is(sketch.percentile(0.5)));
+        assertThat(low.percentile(0.99), is(sketch.percentile(0.99)));
+        assertThat(low.min(), is(1L));
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.percentile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> SpanIngestor.parseSpan("t1,1,-,A,-5"));
+        assertThrows(IllegalArgumentException.class, () -> SpanIngestor.parseSpan("t1,1,-,auth-service,5"));
+    }
+
+    @Test
+    void test_tracePercentilesByConvolution() {
+        GraphService graphService = new GraphService();
+        Graph graph = graphService.parseServiceGraph("AB5, BC4, CD8");
+
+        // A-B is 5 in 90% of the calls and 100 in the rest, B-C has no sketch and always takes 4
+        LatencySketch ab = new LatencySketch();
+        ab.record(5, 90);
+        ab.record(100, 10);
+        graph.setLatencySketch("A", "B", ab);
+        graph.setLatencySketch("C", "D", LatencySketch.of(8, 8, 8, 8, 200));
+
+        assertThat(graphService.getLatencyPercentilesOfGivenTrace(graph, "A-B-C"), is("p50=9 p99=104"));
+        // P(A-B-C-D > 17) = 1 - 0.9 * 0.8 = 0.28
+        assertThat(graphService.getLatencyPercentilesOfGivenTrace(graph, "A-B-C-D"), is("p50=17 p99=304"));
+        assertThat(graphService.getLatencyPercentilesOfGivenTrace(graph, "A-C"), is("NO SUCH TRACE"));
+
+        LatencySketch uniform = new LatencySketch();
+        for (int latency = 0; latency < 1000; latency++) uniform.record(latency);
+        LatencySketch sum = uniform.convolve(uniform);
+        // the sum of two uniform latencies is triangular: median 1000, p99 about 1859
+        assertThat((double) sum.percentile(0.5), closeTo(1000, 40));
+        assertThat((double) sum.percentile(0.99), closeTo(1859, 75));
+        assertThat(sum.mean(), closeTo(999, 1));
+    }
+}
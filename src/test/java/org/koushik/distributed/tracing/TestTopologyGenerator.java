@@ -0,0 +1,90 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.GraphSnapshot;
+import org.koushik.distributed.tracing.service.ShortestTraceSearch;
+import org.koushik.distributed.tracing.service.TopologyGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for the synthetic topology generator.
+ */
+class TestTopologyGenerator {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_textAndSnapshotDescribeTheSameGraph() throws IOException {
+        TopologyGenerator.Settings settings = TopologyGenerator.Settings.parse(
+                "services=2000,fan-out=1.8,max-fan-out=40,cycles=0.3,latency=5..500,distribution=log-normal,seed=11");
+        Path text = tempDir.resolve("mesh.txt");
+        Path binary = tempDir.resolve("mesh.dtg");
+        long textConnections = new TopologyGenerator(settings).writeTo(text);
+        long binaryConnections = new TopologyGenerator(settings).writeTo(binary);
+
+        CompactGraph fromSnapshot = GraphSnapshot.read(binary);
+        CompactGraph fromText = new GraphService().parseServiceGraph(Files.readAllLines(text).get(0)).compact();
+        assertThat(textConnections, is(binaryConnections));
+        assertThat(fromSnapshot.edgeCount(), is((int) binaryConnections));
+        assertThat(fromText.edgeCount(), is(fromSnapshot.edgeCount()));
+
+        for (int source = 0; source < fromSnapshot.nodeCount(); source++) {
+            for (int edge = fromSnapshot.offsets()[source]; edge < fromSnapshot.offsets()[source + 1]; edge++) {
+                int latency = fromSnapshot.latencies()[edge];
+                assertThat(latency, is(fromText.latency(fromText.serviceId("svc_" + source),
+                        fromText.serviceId("svc_" + fromSnapshot.targets()[edge]))));
+                assertThat(latency >= 5 && latency <= 500, is(true));
+            }
+            assertThat(fromSnapshot.offsets()[source + 1] - fromSnapshot.offsets()[source], lessThanOrEqualTo(40));
+        }
+    }
+
+    @Test
+    void test_seedMakesTopologyReproducible() throws IOException {
+        TopologyGenerator.Settings settings = TopologyGenerator.Settings.parse("services=500,seed=3");
+        Path first = tempDir.resolve("first.dtg");
+        Path second = tempDir.resolve("second.dtg");
+        Path otherSeed = tempDir.resolve("other.dtg");
+        new TopologyGenerator(settings).writeTo(first);
+        new TopologyGenerator(settings).writeTo(second);
+        new TopologyGenerator(TopologyGenerator.Settings.parse("services=500,seed=4")).writeTo(otherSeed);
+
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        assertThat(Files.readAllBytes(otherSeed), not(Files.readAllBytes(first)));
+    }
+
+    @Test
+    void test_cycleDensity() throws IOException {
+        Path acyclic = tempDir.resolve("acyclic.dtg");
+        new TopologyGenerator(TopologyGenerator.Settings.parse("services=300,cycles=0")).writeTo(acyclic);
+        CompactGraph graph = GraphSnapshot.read(acyclic);
+        assertThat(graph.edgeCount(), greaterThan(300));
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int edge = graph.offsets()[source]; edge < graph.offsets()[source + 1]; edge++) {
+                assertThat(graph.targets()[edge], greaterThan(source));
+            }
+        }
+        // no cycles, so no trace can come back to where it started
+        assertThat(new GraphService().getShortestTraceByLatencyBetweenGivenNodes(
+                new Graph(graph), "svc_0", "svc_0"), is(ShortestTraceSearch.NO_TRACE));
+
+        assertThrows(IllegalArgumentException.class, () -> TopologyGenerator.Settings.parse("cycles=2"));
+        assertThrows(IllegalArgumentException.class, () -> TopologyGenerator.Settings.parse("fan-out=1"));
+        assertThrows(IllegalArgumentException.class, () -> TopologyGenerator.Settings.parse("colour=red"));
+    }
+}
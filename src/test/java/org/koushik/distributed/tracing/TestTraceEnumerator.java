@@ -0,0 +1,171 @@
+package org.koushik.distributed.tracing;
+
+import org.junit.jupiter.api.Test;
+import org.koushik.distributed.tracing.model.CompactGraph;
+import org.koushik.distributed.tracing.model.Graph;
+import org.koushik.distributed.tracing.model.ServiceDictionary;
+import org.koushik.distributed.tracing.model.TraceQuery;
+import org.koushik.distributed.tracing.model.TraceTrie;
+import org.koushik.distributed.tracing.service.GraphService;
+import org.koushik.distributed.tracing.service.HopTraceCounter;
+import org.koushik.distributed.tracing.service.LatencyTraceCounter;
+import org.koushik.distributed.tracing.service.QueryParser;
+import org.koushik.distributed.tracing.service.QueryPlanner;
+import org.koushik.distributed.tracing.service.TopologyGenerator;
+import org.koushik.distributed.tracing.service.TraceEnumerator;
+import org.koushik.distributed.tracing.service.TraceVisitor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit test for listing the traces behind the hop and latency counts.
+ */
+class TestTraceEnumerator {
+    final GraphService graphService = new GraphService();
+    final Graph graph = graphService.parseServiceGraph("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+
+    @Test
+    void test_tracesStreamedWithSharedPrefixes() {
+        List<String> streamed = new ArrayList<>();
+        TraceTrie trie = graphService.listTracesWithGivenMaxKHops(graph, "C", "C", 3, 10,
+                (tracesSoFar, node) -> streamed.add(tracesSoFar.path(node).toString()));
+        assertThat(streamed, is(List.of("C-D-C:16", "C-E-B-C:9")));
+        assertThat(trie.traceCount(), is(2));
+        assertThat(trie.isCapped(), is(false));
+
+        // 7 traces below 30 starting C-D-C, C-E-B-C, ... share their prefixes
+        TraceTrie withinLatency = graphService.listTracesLessThanGivenLatency(graph, "C", "C", 30, 10, null);
+        assertThat(withinLatency.traceCount(), is(7));
+        int services = 0;
+        for(int traceIdx = 0; traceIdx < 7; traceIdx++) {
+            int node = withinLatency.trace(traceIdx);
+            services += withinLatency.hops(node);
+            assertThat(withinLatency.latency(node), lessThan(30));
+        }
+        assertThat(withinLatency.size() - 1 < services, is(true));
+
+        TraceTrie capped = graphService.listTracesEqualToGivenHops(graph, "A", "C", 4, 2, null);
+        assertThat(capped.traceCount(), is(2));
+        assertThat(capped.isCapped(), is(true));
+        assertThat(graphService.listTracesEqualToGivenHops(graph, "A", "C", 4, 3, null).isCapped(), is(false));
+        assertThat(graphService.listTracesWithGivenMaxKHops(graph, "A", "X", 3, 10, null).traceCount(), is(0));
+
+        List<TraceQuery> queries = QueryParser.parse(List.of("traces max-hops C C 3", "traces exact-hops C A 2"));
+        assertThat(new QueryPlanner(graphService).execute(graph, queries), is(List.of("C-D-C:16, C-E-B-C:9", "NO SUCH TRACE")));
+    }
+
+    @Test
+    void test_listsAsManyTracesAsCountedOnRandomGraphs() {
+        Random random = new Random(22);
+        for(int round = 0; round < 30; round++) {
+            int nodeCount = 3 + random.nextInt(5);
+            ServiceDictionary services = new ServiceDictionary();
+            for(int node = 0; node < nodeCount; node++) services.intern("S" + node);
+            CompactGraph.Builder builder = new CompactGraph.Builder(services);
+            for(int edge = 0; edge < nodeCount * 2; edge++) {
+                builder.addEdge(random.nextInt(nodeCount), random.nextInt(nodeCount), 1 + random.nextInt(9));
+            }
+            CompactGraph compact = builder.build();
+            int source = random.nextInt(nodeCount);
+            int destination = random.nextInt(nodeCount);
+            int hops = 1 + random.nextInt(6);
+            int latencyLimit = 1 + random.nextInt(40);
+
+            TraceTrie maxHops = TraceEnumerator.withMaxHops(compact, source, destination, hops, Integer.MAX_VALUE, null);
+            assertThat((long) maxHops.traceCount(), is(HopTraceCounter.countWithMaxHops(compact, source, destination, hops)));
+            assertDistinct(maxHops);
+
+            TraceTrie exactHops = TraceEnumerator.withExactHops(compact, source, destination, hops, Integer.MAX_VALUE, null);
+            assertThat((long) exactHops.traceCount(), is(HopTraceCounter.countWithExactHops(compact, source, destination, hops)));
+            assertDistinct(exactHops);
+
+            TraceTrie withinLatency = TraceEnumerator.withinLatency(compact, source, destination, latencyLimit, Integer.MAX_VALUE, null);
+            assertThat((long) withinLatency.traceCount(), is(LatencyTraceCounter.count(compact, source, destination, latencyLimit)));
+            assertDistinct(withinLatency);
+
+            assertThat(TraceEnumerator.count(compact, source, TraceVisitor.exactHops(compact, destination, hops),
+                    ForkJoinPool.commonPool()), is((long) exactHops.traceCount()));
+            assertThat(TraceEnumerator.count(compact, source, TraceVisitor.withinLatency(compact, destination, latencyLimit),
+                    ForkJoinPool.commonPool()), is((long) withinLatency.traceCount()));
+        }
+    }
+
+    @Test
+    void test_parallelCountMatchesDynamicProgramming() throws IOException {
+        TopologyGenerator.Settings settings = TopologyGenerator.Settings.parse("services=200,fan-out=1.5,max-fan-out=8,cycles=0.5,seed=24");
+        StringWriter topology = new StringWriter();
+        new TopologyGenerator(settings).writeText(topology);
+        CompactGraph compact = graphService.parseServiceGraph(topology.toString()).compact();
+        int source = compact.serviceId("svc_0");
+        int destination = compact.serviceId("svc_1");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long expected = HopTraceCounter.countWithExactHops(compact, source, destination, 9);
+            assertThat(expected > 10_000, is(true));
+            assertThat(TraceEnumerator.count(compact, source, TraceVisitor.exactHops(compact, destination, 9), pool), is(expected));
+            assertThat(TraceEnumerator.count(compact, source, TraceVisitor.maxHops(compact, destination, 9), pool),
+                    is(HopTraceCounter.countWithMaxHops(compact, source, destination, 9)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void test_listsTracesThroughZeroLatencyConnections() {
+        Graph zeroLatencyGraph = graphService.parseServiceGraph("AB0, BC4, CA3");
+        List<String> traces = new ArrayList<>();
+        TraceTrie trie = graphService.listTracesLessThanGivenLatency(zeroLatencyGraph, "A", "C", 30, 10,
+                (tracesSoFar, node) -> traces.add(tracesSoFar.path(node).toString()));
+        assertThat(traces, is(List.of("A-B-C:4", "A-B-C-A-B-C:11", "A-B-C-A-B-C-A-B-C:18", "A-B-C-A-B-C-A-B-C-A-B-C:25")));
+        assertThat((long) trie.traceCount(), is(graphService.getPossibleTracesLessThanGivenLatency(zeroLatencyGraph, "A", "C", 30)));
+        // A-B has latency 0 and is no trace
+        assertThat(graphService.listTracesLessThanGivenLatency(zeroLatencyGraph, "A", "B", 30, 10, null).traceCount(), is(4));
+
+        CompactGraph compact = zeroLatencyGraph.compact();
+        assertThat(TraceEnumerator.count(compact, compact.serviceId("A"),
+                TraceVisitor.withinLatency(compact, compact.serviceId("C"), 30), ForkJoinPool.commonPool()), is(4L));
+
+        Graph zeroLatencyCycle = graphService.parseServiceGraph("AB0, BA0, BC1");
+        assertThrows(IllegalStateException.class,
+                () -> graphService.listTracesLessThanGivenLatency(zeroLatencyCycle, "A", "C", 30, 10, null));
+    }
+
+    @Test
+    void test_deepTracesDoNotOverflowTheStack() {
+        Graph ring = graphService.parseServiceGraph("AB1, BA1");
+        TraceTrie exactHops = graphService.listTracesEqualToGivenHops(ring, "A", "A", 1_000_000, 10, null);
+        assertThat(exactHops.traceCount(), is(1));
+        assertThat(exactHops.hops(exactHops.trace(0)), is(1_000_000));
+        assertThat(exactHops.latency(exactHops.trace(0)), is(1_000_000));
+
+        TraceTrie withinLatency = graphService.listTracesLessThanGivenLatency(ring, "A", "B", 400_000, 1_000_000, null);
+        assertThat(withinLatency.traceCount(), is(200_000));
+        assertThat(withinLatency.isCapped(), is(false));
+        // every trace extends the one before it, so the trie holds one node per hop
+        assertThat(withinLatency.size(), is(400_000));
+
+        TraceTrie capped = graphService.listTracesLessThanGivenLatency(ring, "A", "B", 400_000, 3, null);
+        assertThat(capped.isCapped(), is(true));
+        assertThat(capped.size(), is(6));
+    }
+
+    private void assertDistinct(TraceTrie trie) {
+        Set<List<String>> traces = new HashSet<>();
+        for(int traceIdx = 0; traceIdx < trie.traceCount(); traceIdx++) {
+            assertThat(traces.add(trie.services(trie.trace(traceIdx))), is(true));
+        }
+    }
+}
@@ -17,6 +17,8 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
@@ -113,6 +115,32 @@ class TestUserInput {
                         is(inputService.validateInputFilePath(invalidFile.getAbsolutePath()))));
     }
 
+    @Test
+    void test_processInputFileInParallelKeepsInputOrder() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int line = 0; line < 50; line++) {
+            // every line has its own latency for A->B, so the first answer of each line tells the line apart
+            lines.append("AB").append(line + 1).append(", BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7\n");
+        }
+        Files.writeString(file.toPath(), lines);
+
+        ByteArrayOutputStream sequentialOut = new ByteArrayOutputStream();
+        new UserInputController(new InputReader(InputStream.nullInputStream(), new PrintStream(sequentialOut)))
+                .processInput(file.getAbsolutePath());
+
+        ByteArrayOutputStream parallelOut = new ByteArrayOutputStream();
+        ExecutorService executor = new ForkJoinPool(4);
+        try {
+            new UserInputController(new InputReader(InputStream.nullInputStream(), new PrintStream(parallelOut)), executor)
+                    .processInput(file.getAbsolutePath());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(sequentialOut.toString(), parallelOut.toString());
+        assertThat(sequentialOut.toString().startsWith("5\n5\n13\n"), is(true));
+    }
+
     @AfterEach
     void tearDownTest() {
         System.setIn(System.in);